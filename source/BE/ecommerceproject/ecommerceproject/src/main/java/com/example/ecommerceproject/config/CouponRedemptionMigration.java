@@ -0,0 +1,90 @@
+package com.example.ecommerceproject.config;
+
+import com.example.ecommerceproject.model.CouponRedemption;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migration chạy một lần: chuyển mảng ordersApplied trong document coupon sang collection coupon_redemptions
+ * rồi xóa mảng này khỏi coupon. Bản ghi đã tồn tại (trùng couponId, orderId) được bỏ qua nên có thể chạy lại.
+ */
+@Component
+public class CouponRedemptionMigration implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CouponRedemptionMigration.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${migration.coupon-redemptions.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public CouponRedemptionMigration(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            int migrated = migrate();
+            if (migrated > 0) {
+                logger.info("Đã chuyển ordersApplied của {} coupon sang coupon_redemptions", migrated);
+            }
+        } catch (Exception e) {
+            logger.error("Không thể chuyển ordersApplied sang coupon_redemptions", e);
+        }
+    }
+
+    public int migrate() {
+        Query query = new Query(Criteria.where("ordersApplied").exists(true));
+        query.fields().include("code", "ordersApplied");
+
+        int migrated = 0;
+        for (Document coupon : mongoTemplate.find(query, Document.class, "coupons")) {
+            String couponId = String.valueOf(coupon.get("_id"));
+            List<CouponRedemption> redemptions = new ArrayList<>();
+            for (Object orderId : coupon.getList("ordersApplied", Object.class, List.of())) {
+                redemptions.add(new CouponRedemption(couponId, coupon.getString("code"), String.valueOf(orderId)));
+            }
+
+            if (!redemptions.isEmpty()) {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CouponRedemption.class);
+                bulk.insert(redemptions);
+                try {
+                    bulk.execute();
+                } catch (BulkOperationException e) {
+                    // Trùng (couponId, orderId): đã được chuyển ở lần chạy trước; lỗi khác thì giữ nguyên mảng để chạy lại
+                    if (e.getErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                        throw e;
+                    }
+                    logger.debug("Skipped {} existing redemptions for coupon {}", e.getErrors().size(), couponId);
+                }
+            }
+
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(coupon.get("_id"))),
+                    new Update().unset("ordersApplied"), "coupons");
+            migrated++;
+        }
+        return migrated;
+    }
+}
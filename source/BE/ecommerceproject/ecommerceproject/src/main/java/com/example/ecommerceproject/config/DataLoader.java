@@ -486,7 +486,7 @@ public class DataLoader implements CommandLineRunner {
             
             // Cập nhật danh sách tags cho sản phẩm
             if (!productTags.isEmpty()) {
-                product.setTags(productTags);
+                product.setTags(new ArrayList<>(productTags.stream().map(TagSnapshot::of).toList()));
                 productRepository.save(product);
             }
         }
@@ -554,8 +554,8 @@ public class DataLoader implements CommandLineRunner {
         product.setImageUrls(imageUrls);
         product.setSoldCount(soldCount);
         product.setDiscountPercent(discountPercent);
-        product.setBrand(brand);
-        product.setProductType(productType);
+        product.setBrand(BrandSnapshot.of(brand));
+        product.setProductType(ProductTypeSnapshot.of(productType));
         product.setTags(new ArrayList<>());
         
         // Thêm specifications cho sản phẩm dựa vào loại sản phẩm
@@ -1263,6 +1263,7 @@ public class DataLoader implements CommandLineRunner {
             
             item.setPrice(finalPrice);
             item.setImageUrl(product.getPrimaryImageUrl());
+            item.setCostPrice(product.estimateCostPrice());
             
             items.add(item);
             
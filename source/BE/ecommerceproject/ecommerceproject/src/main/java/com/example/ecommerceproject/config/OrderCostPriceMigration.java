@@ -0,0 +1,152 @@
+package com.example.ecommerceproject.config;
+
+import com.example.ecommerceproject.model.Product;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Migration chạy một lần: bổ sung costPrice cho các OrderItem được tạo trước khi giá vốn được chụp lại.
+ * - Sản phẩm đã có giá vốn: dùng giá vốn hiện tại của sản phẩm
+ * - Ngược lại: ước tính theo giá bán trong đơn và biên lợi nhuận mặc định (khớp với cách tính lợi nhuận cũ)
+ * Chỉ động tới dòng hàng chưa có costPrice nên có thể chạy lại nhiều lần.
+ */
+@Component
+public class OrderCostPriceMigration implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderCostPriceMigration.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${migration.order-cost-price.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public OrderCostPriceMigration(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            int updated = backfill();
+            if (updated > 0) {
+                logger.info("Đã bổ sung giá vốn cho {} đơn hàng", updated);
+            }
+        } catch (Exception e) {
+            logger.error("Không thể bổ sung giá vốn cho đơn hàng", e);
+        }
+    }
+
+    public int backfill() {
+        Query query = new Query(Criteria.where("items").elemMatch(Criteria.where("costPrice").exists(false)));
+        query.fields().include("items");
+
+        int updated = 0;
+        List<Document> batch = new ArrayList<>();
+        try (Stream<Document> orders = mongoTemplate.stream(query, Document.class, "orders")) {
+            for (Document order : (Iterable<Document>) orders::iterator) {
+                batch.add(order);
+                if (batch.size() == BATCH_SIZE) {
+                    updated += backfillBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            updated += backfillBatch(batch);
+        }
+        return updated;
+    }
+
+    private int backfillBatch(List<Document> orders) {
+        Set<String> productIds = new HashSet<>();
+        for (Document order : orders) {
+            for (Document item : items(order)) {
+                if (item.get("productId") != null) {
+                    productIds.add(item.getString("productId"));
+                }
+            }
+        }
+        Map<String, Double> productCosts = findProductCostPrices(productIds);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "orders");
+        int count = 0;
+        for (Document order : orders) {
+            Update update = new Update();
+            List<Document> items = items(order);
+            for (int i = 0; i < items.size(); i++) {
+                Document item = items.get(i);
+                if (item.containsKey("costPrice")) {
+                    continue;
+                }
+                Double costPrice = productCosts.get(item.getString("productId"));
+                if (costPrice == null) {
+                    double price = item.get("price") instanceof Number number ? number.doubleValue() : 0.0;
+                    costPrice = price * (1 - Product.DEFAULT_MARGIN_RATE);
+                }
+                update.set("items." + i + ".costPrice", costPrice);
+            }
+
+            if (!update.getUpdateObject().isEmpty()) {
+                bulk.updateOne(new Query(Criteria.where("_id").is(order.get("_id"))), update);
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            bulk.execute();
+        }
+        return count;
+    }
+
+    // Chỉ lấy những sản phẩm đã có giá vốn
+    private Map<String, Double> findProductCostPrices(Set<String> productIds) {
+        Map<String, Double> result = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return result;
+        }
+
+        List<Object> keys = productIds.stream()
+                .map(id -> ObjectId.isValid(id) ? (Object) new ObjectId(id) : id)
+                .toList();
+        Query query = new Query(Criteria.where("_id").in(keys).and("costPrice").ne(null));
+        query.fields().include("costPrice");
+
+        for (Document product : mongoTemplate.find(query, Document.class, "products")) {
+            if (product.get("costPrice") instanceof Number number) {
+                result.put(String.valueOf(product.get("_id")), number.doubleValue());
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Document> items(Document order) {
+        Object items = order.get("items");
+        return items instanceof List<?> list ? (List<Document>) list : List.of();
+    }
+}
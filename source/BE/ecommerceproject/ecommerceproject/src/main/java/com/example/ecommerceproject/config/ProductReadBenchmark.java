@@ -0,0 +1,86 @@
+package com.example.ecommerceproject.config;
+
+import com.example.ecommerceproject.model.Product;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Đo số lệnh MongoDB khi đọc một trang sản phẩm: bản sao nhúng (hiện tại) so với cách tra @DBRef cũ
+ * (một lệnh cho brand, một cho productType và một $in cho tags trên mỗi sản phẩm).
+ * Chỉ bật khi benchmark.product-reads.enabled=true, chạy sau các migration và ghi kết quả ra log.
+ */
+@Configuration
+@ConditionalOnProperty(name = "benchmark.product-reads.enabled", havingValue = "true")
+public class ProductReadBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductReadBenchmark.class);
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer productReadBenchmarkCommandCounter() {
+        CommandListener listener = new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                commandCount.incrementAndGet();
+            }
+        };
+        return builder -> builder.addCommandListener(listener);
+    }
+
+    @Bean
+    @Order
+    public CommandLineRunner productReadBenchmarkRunner(MongoTemplate mongoTemplate,
+                                                        @Value("${benchmark.product-reads.page-size:100}") int pageSize) {
+        return args -> {
+            Query page = new Query().limit(pageSize);
+
+            // Bản sao nhúng: một lệnh find là đủ để có tên brand/loại/tag
+            long commands = commandCount.get();
+            long start = System.nanoTime();
+            List<Product> products = mongoTemplate.find(page, Product.class);
+            report("embedded snapshots", products.size(), commandCount.get() - commands, System.nanoTime() - start);
+
+            // Cách cũ: đọc sản phẩm rồi tra từng tham chiếu như khi resolve @DBRef
+            commands = commandCount.get();
+            start = System.nanoTime();
+            List<Product> legacy = mongoTemplate.find(page, Product.class);
+            for (Product product : legacy) {
+                if (product.getBrand() != null) {
+                    mongoTemplate.findById(product.getBrand().getId(), Document.class, "brands");
+                }
+                if (product.getProductType() != null) {
+                    mongoTemplate.findById(product.getProductType().getId(), Document.class, "product_types");
+                }
+                if (product.getTags() != null && !product.getTags().isEmpty()) {
+                    List<String> tagIds = new ArrayList<>();
+                    product.getTags().forEach(tag -> tagIds.add(tag.getId()));
+                    mongoTemplate.find(new Query(Criteria.where("_id").in(tagIds)), Document.class, "tags");
+                }
+            }
+            report("@DBRef lookups", legacy.size(), commandCount.get() - commands, System.nanoTime() - start);
+        };
+    }
+
+    private void report(String mode, int products, long commands, long elapsedNanos) {
+        logger.info("Product read benchmark [{}]: {} products, {} Mongo commands, {} ms",
+                mode, products, commands, elapsedNanos / 1_000_000);
+    }
+}
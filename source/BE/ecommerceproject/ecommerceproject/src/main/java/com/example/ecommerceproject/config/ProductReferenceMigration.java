@@ -0,0 +1,147 @@
+package com.example.ecommerceproject.config;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Migration chạy một lần: đổi brand/productType/tags của sản phẩm từ @DBRef sang bản sao nhúng
+ * ({_id, name}, {_id, name, image}, {_id, name, color, active}).
+ * Chỉ đọc các sản phẩm còn DBRef nên có thể chạy lại nhiều lần; tham chiếu tới bản ghi đã bị xóa được bỏ đi.
+ */
+@Component
+public class ProductReferenceMigration implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductReferenceMigration.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${migration.product-references.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    public ProductReferenceMigration(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            int migrated = migrate();
+            if (migrated > 0) {
+                logger.info("Đã chuyển brand/productType/tags của {} sản phẩm sang bản sao nhúng", migrated);
+            }
+        } catch (Exception e) {
+            logger.error("Không thể chuyển tham chiếu @DBRef của sản phẩm sang bản sao nhúng", e);
+        }
+    }
+
+    public int migrate() {
+        Query query = new BasicQuery(new Document("$or", List.of(
+                new Document("brand.$ref", new Document("$exists", true)),
+                new Document("productType.$ref", new Document("$exists", true)),
+                new Document("tags.$ref", new Document("$exists", true)))));
+        query.fields().include("brand", "productType", "tags");
+
+        // Brand, loại sản phẩm và tag đều ít nên nạp một lần toàn bộ
+        Map<Object, Document> brands = snapshots("brands", "name");
+        Map<Object, Document> productTypes = snapshots("product_types", "name", "image");
+        Map<Object, Document> tags = snapshots("tags", "name", "color", "active");
+        // Tag cũ chưa có trường active được coi là đang active như giá trị mặc định của Tag
+        tags.values().forEach(tag -> tag.putIfAbsent("active", true));
+
+        int migrated = 0;
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "products");
+        int pending = 0;
+        try (Stream<Document> products = mongoTemplate.stream(query, Document.class, "products")) {
+            for (Document product : (Iterable<Document>) products::iterator) {
+                bulk.updateOne(new Query(Criteria.where("_id").is(product.get("_id"))),
+                        toUpdate(product, brands, productTypes, tags));
+                pending++;
+                if (pending == BATCH_SIZE) {
+                    bulk.execute();
+                    migrated += pending;
+                    pending = 0;
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "products");
+                }
+            }
+        }
+        if (pending > 0) {
+            bulk.execute();
+            migrated += pending;
+        }
+        return migrated;
+    }
+
+    private Update toUpdate(Document product, Map<Object, Document> brands,
+                            Map<Object, Document> productTypes, Map<Object, Document> tags) {
+        Update update = new Update();
+        if (product.get("brand") instanceof DBRef ref) {
+            setOrUnset(update, "brand", brands.get(ref.getId()));
+        }
+        if (product.get("productType") instanceof DBRef ref) {
+            setOrUnset(update, "productType", productTypes.get(ref.getId()));
+        }
+        if (product.get("tags") instanceof List<?> list) {
+            List<Object> converted = new ArrayList<>();
+            for (Object tag : list) {
+                if (tag instanceof DBRef ref) {
+                    Document snapshot = tags.get(ref.getId());
+                    if (snapshot != null) {
+                        converted.add(snapshot);
+                    }
+                } else if (tag != null) {
+                    converted.add(tag);
+                }
+            }
+            update.set("tags", converted);
+        }
+        return update;
+    }
+
+    private void setOrUnset(Update update, String field, Document snapshot) {
+        if (snapshot != null) {
+            update.set(field, snapshot);
+        } else {
+            update.unset(field);
+        }
+    }
+
+    // _id -> bản sao chỉ gồm _id và các trường được liệt kê, theo đúng thứ tự trường của lớp *Snapshot
+    private Map<Object, Document> snapshots(String collection, String... fields) {
+        Query query = new Query();
+        query.fields().include(fields);
+
+        Map<Object, Document> result = new HashMap<>();
+        for (Document document : mongoTemplate.find(query, Document.class, collection)) {
+            Document snapshot = new Document("_id", document.get("_id"));
+            for (String field : fields) {
+                snapshot.append(field, document.get(field));
+            }
+            result.put(document.get("_id"), snapshot);
+        }
+        return result;
+    }
+}
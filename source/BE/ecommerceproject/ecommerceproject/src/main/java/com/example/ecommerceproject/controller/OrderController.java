@@ -9,6 +9,9 @@ import com.example.ecommerceproject.model.OrderStatus;
 import com.example.ecommerceproject.model.Product;
 import com.example.ecommerceproject.model.User;
 import com.example.ecommerceproject.response.ApiResponse;
+import com.example.ecommerceproject.service.IdempotencyService;
+import com.example.ecommerceproject.service.OrderOutboxService;
+import com.example.ecommerceproject.service.OrderQueryService;
 import com.example.ecommerceproject.service.OrderService;
 import com.example.ecommerceproject.service.OrderStateManager;
 import com.example.ecommerceproject.service.PaymentService;
@@ -52,8 +55,22 @@ public class OrderController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private OrderOutboxService orderOutboxService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @PostMapping("/user/create")
-    public ResponseEntity<ApiResponse<?>> createUserOrder(@RequestBody Map<String, Object> orderRequest) {
+    public ResponseEntity<ApiResponse<?>> createUserOrder(
+            @RequestBody Map<String, Object> orderRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        // Client gửi lại cùng Idempotency-Key sẽ nhận lại kết quả cũ thay vì tạo thêm đơn
+        return idempotencyService.execute("orders/user/create", idempotencyKey, orderRequest,
+                () -> doCreateUserOrder(orderRequest));
+    }
+
+    private ResponseEntity<ApiResponse<?>> doCreateUserOrder(Map<String, Object> orderRequest) {
         try {
             String userId = (String) orderRequest.get("userId");
             String paymentMethod = (String) orderRequest.get("paymentMethod");
@@ -258,7 +275,13 @@ public class OrderController {
     @PostMapping("/{orderId}/pay")
     public ResponseEntity<ApiResponse<?>> processPayment(
             @PathVariable String orderId,
-            @RequestBody Map<String, Object> paymentDetails) {
+            @RequestBody Map<String, Object> paymentDetails,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("orders/" + orderId + "/pay", idempotencyKey, paymentDetails,
+                () -> doProcessPayment(orderId, paymentDetails));
+    }
+
+    private ResponseEntity<ApiResponse<?>> doProcessPayment(String orderId, Map<String, Object> paymentDetails) {
         try {
             Order updatedOrder = orderService.processOrderPayment(orderId, paymentDetails);
 
@@ -288,8 +311,8 @@ public class OrderController {
             Order order = orderService.getOrderById(orderId);
 
             if (success) {
-                int pointsEarned = order.calculateLoyaltyPointsEarned();
-                userService.addLoyaltyPoints(order.getUserId(), order.getFinalAmount());
+                // Cộng điểm loyalty bất đồng bộ qua outbox, mỗi trạng thái chỉ cộng một lần
+                orderOutboxService.recordLoyaltyAccrual(order, order.getFinalAmount(), order.getStatus().name());
                 return ResponseEntity.ok(new ApiResponse<>(
                         ApiStatus.SUCCESS.getCode(),
                         "Order processed successfully to state: " + order.getStatus(),
@@ -312,6 +335,53 @@ public class OrderController {
         }
     }
 
+    /**
+     * Process many orders to their next state at once (e.g. ship a warehouse batch of PAID orders)
+     */
+    @PostMapping("/bulk/process")
+    public ResponseEntity<ApiResponse<?>> processOrders(@RequestBody Map<String, List<String>> request) {
+        return bulkTransition(request, true);
+    }
+
+    /**
+     * Cancel many orders at once
+     */
+    @PostMapping("/bulk/cancel")
+    public ResponseEntity<ApiResponse<?>> cancelOrders(@RequestBody Map<String, List<String>> request) {
+        return bulkTransition(request, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResponseEntity<ApiResponse<?>> bulkTransition(Map<String, List<String>> request, boolean process) {
+        List<String> orderIds = request.get("orderIds");
+        if (orderIds == null || orderIds.isEmpty()) {
+            return ResponseEntity.badRequest().body(
+                    new ApiResponse<>(ApiStatus.BAD_REQUEST.getCode(), "Missing required field: orderIds", null));
+        }
+
+        try {
+            Map<String, Object> result = process
+                    ? orderStateManager.processOrders(orderIds)
+                    : orderStateManager.cancelOrders(orderIds);
+
+            List<Order> updatedOrders = (List<Order>) result.get("updatedOrders");
+            if (process) {
+                orderOutboxService.recordLoyaltyAccruals(updatedOrders);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("updated", updatedOrders.stream().map(Order::getId).toList());
+            response.put("skipped", result.get("skipped"));
+            response.put("notFound", result.get("notFound"));
+            return ResponseEntity.ok(new ApiResponse<>(ApiStatus.SUCCESS.getCode(),
+                    updatedOrders.size() + " orders updated", response));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(
+                    new ApiResponse<>(ApiStatus.SERVER_ERROR.getCode(),
+                            "Error processing orders: " + e.getMessage(), null));
+        }
+    }
+
     /**
      * Cancel an order using State Pattern
      */
@@ -366,11 +436,16 @@ public class OrderController {
 
     /**
      * Get all orders for a user
+     * view=summary: chỉ trả về OrderSummary, đơn đầy đủ lấy qua GET /{orderId}
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<ApiResponse<?>> getOrdersByUser(@PathVariable String userId) {
+    public ResponseEntity<ApiResponse<?>> getOrdersByUser(
+            @PathVariable String userId,
+            @RequestParam(required = false) String view) {
         try {
-            List<Order> orders = orderService.getOrdersByUserId(userId);
+            List<?> orders = OrderQueryService.VIEW_SUMMARY.equalsIgnoreCase(view)
+                    ? orderService.getOrderSummariesByUserId(userId)
+                    : orderService.getOrdersByUserId(userId);
             return ResponseEntity.ok(new ApiResponse<>(ApiStatus.SUCCESS.getCode(),
                     "Orders retrieved successfully", orders));
 
@@ -407,17 +482,12 @@ public class OrderController {
             @RequestParam(required = false) String startDate,
             @RequestParam(required = false) String endDate,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String view) {
         try {
-            // Log các tham số nhận được để debug
-            System.out.println("Filter params - status: " + status + 
-                               ", startDate: " + startDate + 
-                               ", endDate: " + endDate +
-                               ", page: " + page +
-                               ", size: " + size);
-            
-            // Lấy và lọc danh sách đơn hàng
-            Map<String, Object> result = orderService.getFilteredOrders(status, startDate, endDate, page, size);
+            // Lấy và lọc danh sách đơn hàng (cursor: phân trang keyset, view=summary: bản rút gọn)
+            Map<String, Object> result = orderService.getFilteredOrders(status, startDate, endDate, page, size, cursor, view);
             
             return ResponseEntity.ok(new ApiResponse<>(
                     ApiStatus.SUCCESS.getCode(),
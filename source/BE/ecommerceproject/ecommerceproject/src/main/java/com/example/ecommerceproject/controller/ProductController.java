@@ -4,6 +4,8 @@ import com.example.ecommerceproject.exception.ApiStatus;
 import com.example.ecommerceproject.model.Product;
 import com.example.ecommerceproject.model.Tag;
 import com.example.ecommerceproject.response.ApiResponse;
+import com.example.ecommerceproject.search.FacetQuery;
+import com.example.ecommerceproject.search.ProductSuggestService;
 import com.example.ecommerceproject.service.FileStorageService;
 import com.example.ecommerceproject.service.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -54,8 +56,21 @@ public class ProductController {
     @GetMapping("/products/paged")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getPagedProducts(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
-        Map<String, Object> pageResult = productService.getPagedProducts(page, size);
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String direction,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        // cursor: phân trang keyset cho cuộn vô hạn, ví dụ /products/paged?cursor=&sort=newest&size=20
+        Map<String, Object> pageResult;
+        try {
+            pageResult = productService.getPagedProducts(page, size, cursor, sort, direction, includeTotal);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse<>(
+                    ApiStatus.BAD_REQUEST.getCode(),
+                    e.getMessage()
+            ));
+        }
         ApiResponse<Map<String, Object>> response = new ApiResponse<>(
                 ApiStatus.SUCCESS.getCode(),
                 ApiStatus.SUCCESS.getMessage(),
@@ -83,8 +98,10 @@ public class ProductController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<ApiResponse<List<Product>>> searchProducts(@RequestParam String query) {
-        List<Product> products = productService.searchProducts(query);
+    public ResponseEntity<ApiResponse<List<Product>>> searchProducts(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "false") boolean fuzzy) {
+        List<Product> products = fuzzy ? productService.searchProducts(query, true) : productService.searchProducts(query);
         ApiResponse<List<Product>> response = new ApiResponse<>(
                 ApiStatus.SUCCESS.getCode(),
                 ApiStatus.SUCCESS.getMessage(),
@@ -93,6 +110,62 @@ public class ProductController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/suggest")
+    public ResponseEntity<ApiResponse<List<ProductSuggestService.Suggestion>>> suggestProducts(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<ProductSuggestService.Suggestion> suggestions = productService.suggestProducts(query, Math.min(Math.max(limit, 1), 20));
+        ApiResponse<List<ProductSuggestService.Suggestion>> response = new ApiResponse<>(
+                ApiStatus.SUCCESS.getCode(),
+                ApiStatus.SUCCESS.getMessage(),
+                suggestions
+        );
+        return ResponseEntity.ok(response);
+    }
+
+    // Lọc kết hợp nhiều điều kiện, ví dụ /filter?brandIds=a,b&tagIds=x&minPrice=1000000&inStock=true
+    @GetMapping("/filter")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> filterProducts(
+            @RequestParam(required = false) List<String> brandIds,
+            @RequestParam(required = false) List<String> productTypeIds,
+            @RequestParam(required = false) List<String> tagIds,
+            @RequestParam(defaultValue = "any") String tagMode,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "false") boolean inStock,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        if (page < 0 || size <= 0 || size > 100) {
+            return ResponseEntity.badRequest().body(new ApiResponse<>(
+                    ApiStatus.BAD_REQUEST.getCode(),
+                    "page must be >= 0 and size between 1 and 100"
+            ));
+        }
+
+        FacetQuery query = new FacetQuery();
+        query.setBrandIds(brandIds != null ? brandIds : List.of());
+        query.setProductTypeIds(productTypeIds != null ? productTypeIds : List.of());
+        query.setTagIds(tagIds != null ? tagIds : List.of());
+        query.setMatchAllTags("all".equalsIgnoreCase(tagMode));
+        query.setMinPrice(minPrice);
+        query.setMaxPrice(maxPrice);
+        query.setInStockOnly(inStock);
+
+        try {
+            Map<String, Object> result = productService.filterProducts(query, page, size);
+            return ResponseEntity.ok(new ApiResponse<>(
+                    ApiStatus.SUCCESS.getCode(),
+                    ApiStatus.SUCCESS.getMessage(),
+                    result
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ApiResponse<>(
+                    ApiStatus.SERVER_ERROR.getCode(),
+                    e.getMessage()
+            ));
+        }
+    }
+
     @GetMapping("/by-brand/{brandId}")
     public ResponseEntity<ApiResponse<List<Product>>> getProductsByBrand(@PathVariable String brandId) {
         List<Product> products = productService.getProductsByBrand(brandId);
@@ -394,7 +467,7 @@ public class ProductController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
         }
         
-        List<Tag> tags = product.getTags();
+        List<Tag> tags = productService.getProductTags(product);
         ApiResponse<List<Tag>> response = new ApiResponse<>(
                 ApiStatus.SUCCESS.getCode(),
                 ApiStatus.SUCCESS.getMessage(),
@@ -1,11 +1,15 @@
 package com.example.ecommerceproject.controller;
 
+import com.example.ecommerceproject.exception.ApiStatus;
+import com.example.ecommerceproject.model.SalesLedger;
 import com.example.ecommerceproject.model.StatisticsData;
+import com.example.ecommerceproject.response.ApiResponse;
 import com.example.ecommerceproject.service.StatisticsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -13,6 +17,7 @@ import org.springframework.web.bind.annotation.RestController;
 import java.time.LocalDate;
 import java.time.Year;
 import java.time.temporal.ChronoUnit;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/statistics")
@@ -65,4 +70,36 @@ public class StatisticsController {
 
         return new ResponseEntity<>(statisticsData, HttpStatus.OK);
     }
-}
\ No newline at end of file
+
+    // Số liệu hit/miss của cache thống kê
+    @GetMapping("/cache/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getCacheStats() {
+        return ResponseEntity.ok(new ApiResponse<>(
+                ApiStatus.SUCCESS.getCode(),
+                ApiStatus.SUCCESS.getMessage(),
+                statisticsService.getCacheStats()
+        ));
+    }
+
+    // Dựng lại rollup daily_sales từ collection orders
+    @PostMapping("/rollup/rebuild")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> rebuildRollup() {
+        int days = statisticsService.rebuildDailySales();
+        return ResponseEntity.ok(new ApiResponse<>(
+                ApiStatus.SUCCESS.getCode(),
+                "Daily sales rollup rebuilt",
+                Map.of("days", days)
+        ));
+    }
+
+    // Đối soát sổ cái doanh số với collection orders
+    @PostMapping("/ledger/reconcile")
+    public ResponseEntity<ApiResponse<SalesLedger>> reconcileLedger() {
+        SalesLedger ledger = statisticsService.reconcileSalesLedger();
+        return ResponseEntity.ok(new ApiResponse<>(
+                ApiStatus.SUCCESS.getCode(),
+                "Sales ledger reconciled",
+                ledger
+        ));
+    }
+}
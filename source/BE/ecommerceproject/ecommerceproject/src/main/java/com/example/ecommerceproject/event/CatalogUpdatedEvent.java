@@ -0,0 +1,44 @@
+package com.example.ecommerceproject.event;
+
+import com.example.ecommerceproject.model.Product;
+import com.example.ecommerceproject.service.CatalogSnapshot;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sự kiện phát ra mỗi khi ProductCatalog thay bản chụp mới, theo đúng thứ tự thay.
+ * fullReload == true nghĩa là toàn bộ danh mục được nạp lại và các chỉ mục phụ nên dựng lại từ snapshot.
+ * stockOnly == true nghĩa là các sản phẩm trong upserts chỉ đổi quantity/soldCount (tên, mô tả, brand... giữ nguyên).
+ */
+@Getter
+public class CatalogUpdatedEvent {
+
+    private final CatalogSnapshot snapshot;
+    private final boolean fullReload;
+    private final boolean stockOnly;
+    private final List<Product> upserts;
+    private final Set<String> removedIds;
+
+    private CatalogUpdatedEvent(CatalogSnapshot snapshot, boolean fullReload, boolean stockOnly,
+                                List<Product> upserts, Set<String> removedIds) {
+        this.snapshot = snapshot;
+        this.fullReload = fullReload;
+        this.stockOnly = stockOnly;
+        this.upserts = List.copyOf(upserts);
+        this.removedIds = Set.copyOf(removedIds);
+    }
+
+    public static CatalogUpdatedEvent reloaded(CatalogSnapshot snapshot) {
+        return new CatalogUpdatedEvent(snapshot, true, false, List.of(), Set.of());
+    }
+
+    public static CatalogUpdatedEvent changed(CatalogSnapshot snapshot, List<Product> upserts, Set<String> removedIds) {
+        return new CatalogUpdatedEvent(snapshot, false, false, upserts, removedIds);
+    }
+
+    public static CatalogUpdatedEvent stockChanged(CatalogSnapshot snapshot, List<Product> products) {
+        return new CatalogUpdatedEvent(snapshot, false, true, products, Set.of());
+    }
+}
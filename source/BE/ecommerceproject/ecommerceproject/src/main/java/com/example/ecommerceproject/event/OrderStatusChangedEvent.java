@@ -0,0 +1,46 @@
+package com.example.ecommerceproject.event;
+
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Sự kiện phát ra khi một hoặc nhiều đơn hàng được tạo hoặc chuyển trạng thái.
+ * previousStatus == null nghĩa là đơn hàng vừa được tạo.
+ */
+@Getter
+public class OrderStatusChangedEvent {
+
+    private final List<Change> changes;
+
+    public OrderStatusChangedEvent(List<Change> changes) {
+        this.changes = List.copyOf(changes);
+    }
+
+    public static OrderStatusChangedEvent of(Order order, OrderStatus previousStatus) {
+        return new OrderStatusChangedEvent(List.of(new Change(order, previousStatus)));
+    }
+
+    public static OrderStatusChangedEvent created(Order order) {
+        return of(order, null);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Change {
+        private final Order order;
+        private final OrderStatus previousStatus;
+
+        public boolean isCreated() {
+            return previousStatus == null;
+        }
+
+        // Thay đổi có đi vào hoặc rời khỏi trạng thái status hay không
+        public boolean touches(OrderStatus status) {
+            return previousStatus == status || order.getStatus() == status;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.ecommerceproject.event;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Sự kiện phát ra khi sản phẩm được sửa trực tiếp bằng lệnh update (không qua repository.save),
+ * ví dụ khi trừ/hoàn tồn kho, để các bản sao trong bộ nhớ đọc lại các sản phẩm này.
+ */
+@Getter
+public class ProductsChangedEvent {
+
+    private final Set<String> productIds;
+
+    public ProductsChangedEvent(Collection<String> productIds) {
+        this.productIds = Set.copyOf(productIds);
+    }
+}
@@ -9,6 +9,7 @@ public enum ApiStatus {
     NOT_AUTHOR(405, "Not Author"),
     INVALID_CREDENTIALS(402, "Invalid username or password"),
     INVALID_TOKEN(406, "Invalid token"),
+    CONFLICT(409, "Conflict"),
     BAD_REQUEST(400, "Bad Request");
     private final int code;
     private final String message;
@@ -1,5 +1,6 @@
 package com.example.ecommerceproject.mediator;
 
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
 import com.example.ecommerceproject.model.Order;
 import com.example.ecommerceproject.model.OrderItem;
 import com.example.ecommerceproject.model.OrderStatus;
@@ -8,10 +9,12 @@ import com.example.ecommerceproject.model.Cart;
 import com.example.ecommerceproject.model.CartItem;
 import com.example.ecommerceproject.repository.OrderRepository;
 import com.example.ecommerceproject.service.CartService;
+import com.example.ecommerceproject.service.InventoryService;
 import com.example.ecommerceproject.service.ProductService;
 import com.example.ecommerceproject.service.PaymentService; // Needed for payment method validation
 import com.example.ecommerceproject.singleton.AppLogger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -28,14 +31,19 @@ public class OrderCreationMediatorImpl implements OrderCreationMediator {
     private final PaymentService paymentService;
     private final ProductService productService;
     private final OrderRepository orderRepository;
+    private final InventoryService inventoryService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public OrderCreationMediatorImpl(CartService cartService, PaymentService paymentService,
-                                     ProductService productService, OrderRepository orderRepository) {
+                                     ProductService productService, OrderRepository orderRepository,
+                                     InventoryService inventoryService, ApplicationEventPublisher eventPublisher) {
         this.cartService = cartService;
         this.paymentService = paymentService;
         this.productService = productService;
         this.orderRepository = orderRepository;
+        this.inventoryService = inventoryService;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -70,6 +78,7 @@ public class OrderCreationMediatorImpl implements OrderCreationMediator {
 
         // Step 4: Convert CartItems to OrderItems and check product availability
         List<OrderItem> orderItems = new ArrayList<>();
+        List<InventoryService.StockLine> stockLines = new ArrayList<>();
         double totalAmount = 0.0;
 
         for (CartItem cartItem : itemsToOrder) {
@@ -84,32 +93,44 @@ public class OrderCreationMediatorImpl implements OrderCreationMediator {
                 throw new IllegalArgumentException("Not enough stock for product: " + product.getName());
             }
 
-            productService.decreaseQuantity(cartItem.getProductId(), cartItem.getQuantity());
-            logger.debug("Decreased stock for product {}: by {}", cartItem.getProductId(), cartItem.getQuantity());
-
             OrderItem orderItem = new OrderItem(
                     cartItem.getProductId(),
                     cartItem.getProductName(),
                     cartItem.getQuantity(),
                     cartItem.getPrice(),
-                    cartItem.getImageUrl()
+                    cartItem.getImageUrl(),
+                    product.estimateCostPrice()
             );
             orderItems.add(orderItem);
             totalAmount += cartItem.getPrice() * cartItem.getQuantity();
+            stockLines.add(new InventoryService.StockLine(cartItem.getProductId(), cartItem.getQuantity()));
         }
 
-        // Step 5: Create and Save the order (Interacts with OrderRepository 'colleague')
+        // Step 5: Reserve stock for all lines at once (Interacts with InventoryService 'colleague')
+        // The check above is only a fast path; the conditional update is what prevents overselling
+        inventoryService.reserveForOrder(stockLines);
+        logger.debug("Reserved stock for {} products", stockLines.size());
+
+        // Step 6: Create and Save the order (Interacts with OrderRepository 'colleague')
         Order order = new Order();
         order.setUserId(userId);
         order.setItems(orderItems);
         order.setTotalAmount(totalAmount);
         order.setStatus(OrderStatus.PENDING);
         order.setPaymentMethod(paymentMethod);
+        order.setStockReserved(true);
         // order.setShippingAddress(shippingAddress);
         order.setCreatedAt(LocalDateTime.now());
         order.setUpdatedAt(LocalDateTime.now());
 
-        Order savedOrder = orderRepository.save(order);
+        Order savedOrder;
+        try {
+            savedOrder = orderRepository.save(order);
+        } catch (RuntimeException e) {
+            inventoryService.releaseForOrder(stockLines);
+            throw e;
+        }
+        eventPublisher.publishEvent(OrderStatusChangedEvent.created(savedOrder));
         logger.info("Mediator successfully created order: {} with status: {} for user: {}",
                 savedOrder.getId(), savedOrder.getStatus(), savedOrder.getUserId());
 
@@ -1,12 +1,14 @@
 package com.example.ecommerceproject.mediator;
 
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
 import com.example.ecommerceproject.model.Order;
 import com.example.ecommerceproject.model.OrderItem;
 import com.example.ecommerceproject.model.OrderStatus;
 import com.example.ecommerceproject.repository.OrderRepository;
-import com.example.ecommerceproject.service.CartService;
+import com.example.ecommerceproject.service.OrderOutboxService;
 import com.example.ecommerceproject.singleton.AppLogger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,18 +21,22 @@ public class OrderPaymentMediatorImpl implements OrderPaymentMediator {
     private static final AppLogger logger = AppLogger.getInstance();
 
     private final OrderRepository orderRepository;
-    private final CartService cartService;
+    private final OrderOutboxService orderOutboxService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public OrderPaymentMediatorImpl(OrderRepository orderRepository, CartService cartService) {
+    public OrderPaymentMediatorImpl(OrderRepository orderRepository, OrderOutboxService orderOutboxService,
+                                    ApplicationEventPublisher eventPublisher) {
         this.orderRepository = orderRepository;
-        this.cartService = cartService;
+        this.orderOutboxService = orderOutboxService;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
     @Transactional
     public Order handlePaymentResult(Order order, boolean paymentSuccess) {
         logger.info("Mediator handling payment result for order: {} - Success: {}", order.getId(), paymentSuccess);
+        OrderStatus previousStatus = order.getStatus();
 
         if (paymentSuccess) {
             handleSuccessfulPayment(order);
@@ -39,6 +45,15 @@ public class OrderPaymentMediatorImpl implements OrderPaymentMediator {
         }
 
         Order updatedOrder = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(updatedOrder, previousStatus));
+
+        if (paymentSuccess) {
+            // Remove paid items from the cart asynchronously (Interacts with OrderOutboxService 'colleague')
+            List<String> productIds = updatedOrder.getItems().stream()
+                    .map(OrderItem::getProductId)
+                    .collect(Collectors.toList());
+            orderOutboxService.recordCartCleanup(updatedOrder, productIds);
+        }
         logger.info("Order {} status updated to {}", order.getId(), updatedOrder.getStatus());
 
         return updatedOrder;
@@ -48,14 +63,6 @@ public class OrderPaymentMediatorImpl implements OrderPaymentMediator {
         order.updateStatus(OrderStatus.PAID);
         logger.info("Payment successful for order: {}, updating status to: {}",
                 order.getId(), order.getStatus());
-
-        List<String> productIds = order.getItems().stream()
-                .map(OrderItem::getProductId)
-                .collect(Collectors.toList());
-
-        cartService.removeItemsFromCart(order.getUserId(), productIds);
-        logger.info("Removed {} items from cart for user: {} after successful payment",
-                productIds.size(), order.getUserId());
     }
 
     private void handleFailedPayment(Order order) {
@@ -0,0 +1,21 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bản sao thu gọn của Brand được nhúng trong Product thay cho @DBRef.
+ * Được cập nhật lại trên mọi sản phẩm khi brand đổi tên (CatalogReferencePropagator).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BrandSnapshot {
+    private String id;
+    private String name;
+
+    public static BrandSnapshot of(Brand brand) {
+        return brand != null ? new BrandSnapshot(brand.getId(), brand.getName()) : null;
+    }
+}
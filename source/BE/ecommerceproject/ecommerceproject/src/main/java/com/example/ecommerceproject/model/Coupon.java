@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -19,6 +21,7 @@ public class Coupon {
     @Id
     private String id;
 
+    @Indexed
     private String code;
 
     private double value;
@@ -29,6 +32,9 @@ public class Coupon {
 
     private LocalDateTime creationTime;
 
+    // Không lưu trong document coupon nữa; các lần áp dụng nằm ở collection coupon_redemptions
+    // và chỉ được điền vào khi trả về danh sách cho admin
+    @Transient
     private List<String> ordersApplied = new ArrayList<>();
 
     // Constructor với các tham số cơ bản
@@ -46,14 +52,4 @@ public class Coupon {
     public boolean isValid() {
         return usedCount < maxUses;
     }
-
-    // Phương thức áp dụng coupon vào đơn hàng
-    public boolean applyToOrder(String orderId) {
-        if (isValid() && !ordersApplied.contains(orderId)) {
-            ordersApplied.add(orderId);
-            usedCount++;
-            return true;
-        }
-        return false;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.example.ecommerceproject.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một lần coupon được áp dụng cho một đơn hàng.
+ * Index unique (couponId, orderId) đảm bảo mỗi đơn chỉ dùng một coupon một lần, kể cả khi có request đồng thời.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "coupon_redemptions")
+@CompoundIndex(name = "couponId_orderId", def = "{'couponId': 1, 'orderId': 1}", unique = true)
+public class CouponRedemption {
+
+    @Id
+    private String id;
+
+    private String couponId;
+    private String code;
+    private String orderId;
+    private LocalDateTime redeemedAt;
+
+    public CouponRedemption(String couponId, String code, String orderId) {
+        this.couponId = couponId;
+        this.code = code;
+        this.orderId = orderId;
+        this.redeemedAt = LocalDateTime.now();
+    }
+}
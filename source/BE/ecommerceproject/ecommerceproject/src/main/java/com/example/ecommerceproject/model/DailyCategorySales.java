@@ -0,0 +1,16 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyCategorySales {
+    private String categoryName;
+    private double revenue;
+    private double profit;
+    private int quantitySold;
+    private int orderCount;
+}
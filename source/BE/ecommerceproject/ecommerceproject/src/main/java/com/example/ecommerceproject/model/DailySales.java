@@ -0,0 +1,43 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bản tổng hợp doanh số theo ngày (rollup) của các đơn hàng DELIVERED.
+ * Đơn hàng được tính vào ngày tạo (createdAt), giống cách tính của thống kê cũ.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "daily_sales")
+public class DailySales {
+    @Id
+    private String id; // yyyy-MM-dd, sắp xếp theo chuỗi cũng là sắp xếp theo ngày
+
+    private LocalDate date;
+    private double revenue;
+    private double profit;
+    private int quantitySold;
+    private int orderCount;
+
+    private List<DailyCategorySales> categories = new ArrayList<>();
+
+    private long version; // Tăng ở mỗi lần ghi, dùng làm điều kiện để lần tính cũ không ghi đè lần tính mới
+
+    private LocalDateTime updatedAt;
+
+    public DailySales(LocalDate date) {
+        this.id = date.toString();
+        this.date = date;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
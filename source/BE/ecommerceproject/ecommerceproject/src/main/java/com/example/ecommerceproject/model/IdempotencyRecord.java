@@ -0,0 +1,44 @@
+package com.example.ecommerceproject.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Kết quả của một request có header Idempotency-Key.
+ * id = phạm vi endpoint + key; MongoDB tự xóa bản ghi sau 24 giờ.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+
+    @Id
+    private String id;
+
+    private int requestHash;
+    private Status status;
+    private int httpStatus;
+    private String responseBody; // ApiResponse dạng JSON
+    private LocalDateTime startedAt; // Lúc bắt đầu xử lý; bản ghi IN_PROGRESS quá lâu được request thử lại tiếp quản
+
+    @Indexed(expireAfter = "24h")
+    private LocalDateTime createdAt;
+
+    public IdempotencyRecord(String id, int requestHash) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.status = Status.IN_PROGRESS;
+        this.createdAt = LocalDateTime.now();
+        this.startedAt = this.createdAt;
+    }
+}
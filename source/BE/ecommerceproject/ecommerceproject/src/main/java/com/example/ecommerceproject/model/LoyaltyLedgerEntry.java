@@ -0,0 +1,45 @@
+package com.example.ecommerceproject.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một lần cộng/trừ điểm loyalty, chỉ được ghi thêm và không bao giờ sửa.
+ * _id là mã tham chiếu của thao tác (ví dụ orderId:REDEEM) nên cùng một thao tác không thể được ghi hai lần.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "loyalty_ledger")
+@CompoundIndex(name = "userId_createdAt", def = "{'userId': 1, 'createdAt': -1}")
+public class LoyaltyLedgerEntry {
+
+    public enum Type {
+        EARN,
+        REDEEM
+    }
+
+    @Id
+    private String id;
+
+    private String userId;
+    private String orderId;
+    private Type type;
+    private int points;        // dương khi cộng, âm khi trừ
+    private int spendAmount;   // số tiền cộng vào totalSpend
+    private LocalDateTime createdAt;
+
+    public LoyaltyLedgerEntry(String id, String userId, String orderId, Type type, int points, int spendAmount) {
+        this.id = id;
+        this.userId = userId;
+        this.orderId = orderId;
+        this.type = type;
+        this.points = points;
+        this.spendAmount = spendAmount;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -5,6 +5,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -17,6 +20,13 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "orders")
+@CompoundIndexes({
+        // Danh sách đơn cho admin: lọc theo trạng thái rồi phân trang keyset theo (createdAt, _id)
+        @CompoundIndex(name = "status_createdAt_id", def = "{'status': 1, 'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "createdAt_id", def = "{'createdAt': -1, '_id': -1}"),
+        // Lịch sử đơn hàng của người dùng, mới nhất trước
+        @CompoundIndex(name = "userId_createdAt_id", def = "{'userId': 1, 'createdAt': -1, '_id': -1}")
+})
 public class Order {
     @Id
     private String id;
@@ -32,6 +42,16 @@ public class Order {
     private Address shippingAddress;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private boolean stockReserved; // Tồn kho đã bị trừ khi tạo đơn, cần hoàn lại nếu đơn bị hủy do quá hạn
+
+    // Mã các lần chuyển trạng thái hàng loạt gần nhất, dùng để biết đơn nào do lệnh bulk nào cập nhật
+    private List<String> recentTransitionIds = new ArrayList<>();
+
+    // Đơn đang được cộng trong sales_ledger; chỉ SalesLedgerService đổi cờ này (bằng update có điều kiện)
+    private boolean countedInLedger;
+    // Thời điểm cờ trên vừa bị đổi mà lệnh $inc vào sổ cái có thể chưa chạy xong; xóa sau khi $inc xong
+    @Indexed(sparse = true)
+    private LocalDateTime ledgerPendingSince;
     
     // Lịch sử trạng thái đơn hàng
     private List<StatusHistoryEntry> statusHistory = new ArrayList<>();
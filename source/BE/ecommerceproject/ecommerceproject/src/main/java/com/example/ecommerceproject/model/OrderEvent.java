@@ -0,0 +1,59 @@
+package com.example.ecommerceproject.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Một tác vụ phụ của đơn hàng trong outbox (order_events).
+ * id = orderId:type[:key] nên ghi lại cùng một tác vụ nhiều lần chỉ tạo một bản ghi.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "order_events")
+@CompoundIndex(name = "status_nextAttemptAt", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class OrderEvent {
+
+    public enum Status {
+        PENDING,
+        PROCESSING,
+        DONE,
+        FAILED
+    }
+
+    @Id
+    private String id;
+
+    private String orderId;
+    private String userId;
+    private OrderEventType type;
+
+    private List<String> productIds; // CART_CLEANUP
+    private Double amount;           // LOYALTY_ACCRUAL
+
+    private Status status = Status.PENDING;
+    private int attempts;
+    private String lastError;
+    private LocalDateTime nextAttemptAt;
+    private LocalDateTime lockedUntil;
+    private LocalDateTime createdAt;
+
+    // Bản ghi đã xử lý xong được MongoDB tự xóa sau 7 ngày
+    @Indexed(expireAfter = "7d")
+    private LocalDateTime processedAt;
+
+    public OrderEvent(Order order, OrderEventType type, String key) {
+        this.id = order.getId() + ":" + type + (key != null ? ":" + key : "");
+        this.orderId = order.getId();
+        this.userId = order.getUserId();
+        this.type = type;
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.ecommerceproject.model;
+
+/**
+ * Các tác vụ phụ sau khi đặt/thanh toán đơn hàng, được xử lý bất đồng bộ qua collection order_events
+ */
+public enum OrderEventType {
+    ORDER_CONFIRMATION_EMAIL,
+    CART_CLEANUP,
+    LOYALTY_ACCRUAL
+}
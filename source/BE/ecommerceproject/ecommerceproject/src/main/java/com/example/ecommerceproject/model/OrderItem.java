@@ -13,4 +13,10 @@ public class OrderItem {
     private int quantity;
     private double price;  // Price per item at the time of order
     private String imageUrl;
+    private Double costPrice; // Cost per item at the time of order, null for orders created before it was captured
+
+    // Giá vốn của dòng hàng; đơn cũ chưa có giá vốn thì ước tính theo biên lợi nhuận mặc định
+    public double costPriceOrDefault() {
+        return costPrice != null ? costPrice : price * (1 - Product.DEFAULT_MARGIN_RATE);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bản rút gọn của Order cho các trang danh sách: không có items, statusHistory hay shippingAddress
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary {
+    private String id;
+    private String userId;
+    private OrderStatus status;
+    private double totalAmount;
+    private double couponDiscount;
+    private double loyaltyPointsDiscount;
+    private String paymentMethod;
+    private int itemCount;        // Tổng số lượng sản phẩm trong đơn
+    private String firstProductName;
+    private String firstImageUrl;
+    private LocalDateTime createdAt;
+
+    // Username, email của người đặt (chỉ có ở danh sách cho admin)
+    private Map<String, Object> additionalInfo = new HashMap<>();
+
+    public double getFinalAmount() {
+        return totalAmount - couponDiscount - loyaltyPointsDiscount;
+    }
+}
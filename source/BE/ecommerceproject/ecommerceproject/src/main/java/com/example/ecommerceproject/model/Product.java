@@ -4,7 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.List;
 import java.util.Map;
@@ -13,15 +14,26 @@ import java.util.HashMap;
 import java.time.LocalDateTime;
 
 @Document(collection = "products")
+@CompoundIndexes({
+        // Danh sách sản phẩm phân trang keyset theo (khóa sắp xếp, _id); index đọc được theo cả hai chiều
+        @CompoundIndex(name = "price_id", def = "{'price': 1, '_id': 1}"),
+        @CompoundIndex(name = "createdAt_id", def = "{'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "soldCount_id", def = "{'soldCount': -1, '_id': -1}"),
+        @CompoundIndex(name = "discountPercent_id", def = "{'discountPercent': -1, '_id': -1}")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
+    // Biên lợi nhuận mặc định khi sản phẩm chưa có giá vốn
+    public static final double DEFAULT_MARGIN_RATE = 0.2;
+
     @Id
     private String id;
     
     private String name;
     private double price;
+    private Double costPrice; // Giá vốn, null nếu chưa nhập
     private int quantity;
     private String description;
     private String primaryImageUrl; // Ảnh chính
@@ -33,15 +45,18 @@ public class Product {
     // Technical specifications for components
     private Map<String, String> specifications = new HashMap<>();
     
-    @DBRef
-    private Brand brand;
+    // Brand, loại sản phẩm và tag được nhúng dạng bản sao thu gọn để đọc sản phẩm không phải truy vấn thêm
+    private BrandSnapshot brand;
     
-    @DBRef
-    private ProductType productType;
+    private ProductTypeSnapshot productType;
     
-    @DBRef
-    private List<Tag> tags = new ArrayList<>();
+    private List<TagSnapshot> tags = new ArrayList<>();
     
+    // Giá vốn dùng để chụp vào OrderItem khi đặt hàng
+    public double estimateCostPrice() {
+        return costPrice != null ? costPrice : price * (1 - DEFAULT_MARGIN_RATE);
+    }
+
     // Helper methods for component compatibility
     public String getSocketType() {
         if (specifications != null && specifications.containsKey("socket")) {
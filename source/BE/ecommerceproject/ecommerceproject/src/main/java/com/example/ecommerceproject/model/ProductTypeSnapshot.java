@@ -0,0 +1,21 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bản sao thu gọn của ProductType được nhúng trong Product thay cho @DBRef.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductTypeSnapshot {
+    private String id;
+    private String name;
+    private String image;
+
+    public static ProductTypeSnapshot of(ProductType productType) {
+        return productType != null ? new ProductTypeSnapshot(productType.getId(), productType.getName(), productType.getImage()) : null;
+    }
+}
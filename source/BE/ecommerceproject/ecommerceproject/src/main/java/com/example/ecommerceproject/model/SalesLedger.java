@@ -0,0 +1,33 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sổ cái cộng dồn doanh số của toàn bộ đơn hàng DELIVERED.
+ * Chỉ có một bản ghi (id = GLOBAL_ID), được cập nhật bằng $inc mỗi khi đơn hàng vào/ra trạng thái DELIVERED.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "sales_ledger")
+public class SalesLedger {
+    public static final String GLOBAL_ID = "global";
+
+    @Id
+    private String id = GLOBAL_ID;
+
+    private double revenue;
+    private double profit;
+    private long quantitySold;
+    private long orderCount;
+    private long version; // Tăng ở mỗi lần cập nhật, dùng làm điều kiện khi đối soát ghi đè số liệu
+
+    private LocalDateTime updatedAt;
+    private LocalDateTime reconciledAt; // Lần cuối được dựng lại từ collection orders
+}
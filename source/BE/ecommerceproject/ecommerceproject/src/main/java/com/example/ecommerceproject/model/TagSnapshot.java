@@ -0,0 +1,22 @@
+package com.example.ecommerceproject.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bản sao thu gọn của Tag được nhúng trong Product thay cho @DBRef; giữ màu và trạng thái active vì ứng dụng chỉ hiển thị, lọc các tag đang active.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TagSnapshot {
+    private String id;
+    private String name;
+    private String color;
+    private boolean active = true;
+
+    public static TagSnapshot of(Tag tag) {
+        return tag != null ? new TagSnapshot(tag.getId(), tag.getName(), tag.getColor(), tag.isActive()) : null;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.ecommerceproject.repository;
+
+import com.example.ecommerceproject.model.DailySales;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DailySalesRepository extends MongoRepository<DailySales, String> {
+}
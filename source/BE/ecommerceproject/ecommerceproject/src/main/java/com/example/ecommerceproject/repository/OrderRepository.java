@@ -2,6 +2,7 @@ package com.example.ecommerceproject.repository;
 
 import com.example.ecommerceproject.model.Order;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,4 +12,8 @@ import java.time.LocalDateTime;
 public interface OrderRepository extends MongoRepository<Order, String> {
     List<Order> findByUserId(String userId);
     List<Order> findByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
-}
\ No newline at end of file
+
+    // Khoảng nửa mở [start, endExclusive), khác với Between (loại trừ cả hai đầu)
+    @Query(value = "{ 'createdAt': { $gte: ?0, $lt: ?1 } }", count = true)
+    long countByCreatedAtInRange(LocalDateTime start, LocalDateTime endExclusive);
+}
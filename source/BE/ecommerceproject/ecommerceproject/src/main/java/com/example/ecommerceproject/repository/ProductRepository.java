@@ -1,9 +1,6 @@
 package com.example.ecommerceproject.repository;
 
-import com.example.ecommerceproject.model.Brand;
 import com.example.ecommerceproject.model.Product;
-import com.example.ecommerceproject.model.ProductType;
-import com.example.ecommerceproject.model.Tag;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -11,10 +8,10 @@ import java.util.List;
 
 @Repository
 public interface ProductRepository extends MongoRepository<Product, String> {
-    List<Product> findByBrand(Brand brand);
-    List<Product> findByProductType(ProductType productType);
+    List<Product> findByBrand_Id(String brandId);
+    List<Product> findByProductType_Id(String productTypeId);
     List<Product> findByNameContainingIgnoreCase(String name);
-    List<Product> findByBrandAndProductType(Brand brand, ProductType productType);
+    List<Product> findByBrand_IdAndProductType_Id(String brandId, String productTypeId);
     List<Product> findByProductType_Name(String productTypeName);
-    List<Product> findByTagsContaining(Tag tag);
+    List<Product> findByTags_Id(String tagId);
 }
\ No newline at end of file
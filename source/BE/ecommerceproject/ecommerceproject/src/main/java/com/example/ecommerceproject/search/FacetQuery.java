@@ -0,0 +1,20 @@
+package com.example.ecommerceproject.search;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Điều kiện lọc sản phẩm: các giá trị trong cùng một nhóm được OR, các nhóm khác nhau được AND.
+ * Tag có thể yêu cầu khớp tất cả (matchAllTags) thay vì một trong số các tag.
+ */
+@Data
+public class FacetQuery {
+    private List<String> brandIds = List.of();
+    private List<String> productTypeIds = List.of();
+    private List<String> tagIds = List.of();
+    private boolean matchAllTags;
+    private Double minPrice;   // theo giá sau giảm giá
+    private Double maxPrice;
+    private boolean inStockOnly;
+}
@@ -0,0 +1,180 @@
+package com.example.ecommerceproject.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Tìm các từ trong từ điển gần giống một từ bị gõ sai ("ryzn" -> "ryzen").
+ * - Từ điển được chia thành nhiều shard theo hash; mỗi shard có chỉ mục trigram -> từ
+ * - Ứng viên là các từ có đủ số trigram chung, sau đó được kiểm tra bằng khoảng cách Levenshtein có giới hạn
+ * - Các shard được tìm song song trên một ForkJoinPool riêng
+ * - Không thread-safe khi thêm/xóa: nơi sử dụng không được gọi add/remove đồng thời với match
+ */
+public class FuzzyTermIndex implements AutoCloseable {
+
+    private static final int GRAM = 3;
+
+    private final Shard[] shards;
+    private final ForkJoinPool pool;
+
+    private static final class Shard {
+        private final Map<String, Set<String>> termsByGram = new HashMap<>();
+        private final Set<String> terms = new HashSet<>();
+    }
+
+    public FuzzyTermIndex(int shardCount) {
+        int count = Math.max(1, shardCount);
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard();
+        }
+        this.pool = count > 1 ? new ForkJoinPool(count) : null;
+    }
+
+    public void add(String term) {
+        Shard shard = shardOf(term);
+        if (shard.terms.add(term)) {
+            for (String gram : grams(term)) {
+                shard.termsByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(term);
+            }
+        }
+    }
+
+    public void remove(String term) {
+        Shard shard = shardOf(term);
+        if (shard.terms.remove(term)) {
+            for (String gram : grams(term)) {
+                Set<String> terms = shard.termsByGram.get(gram);
+                if (terms != null) {
+                    terms.remove(term);
+                    if (terms.isEmpty()) {
+                        shard.termsByGram.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (Shard shard : shards) {
+            shard.terms.clear();
+            shard.termsByGram.clear();
+        }
+    }
+
+    /**
+     * Các từ có khoảng cách Levenshtein tới token không quá maxDistance (kể cả chính token nếu có), kèm khoảng cách
+     */
+    public Map<String, Integer> match(String token, int maxDistance) {
+        List<String> tokenGrams = grams(token);
+        if (pool == null) {
+            return matchShard(shards[0], token, tokenGrams, maxDistance);
+        }
+
+        List<Callable<Map<String, Integer>>> tasks = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            tasks.add(() -> matchShard(shard, token, tokenGrams, maxDistance));
+        }
+        Map<String, Integer> result = new HashMap<>();
+        try {
+            for (Future<Map<String, Integer>> future : pool.invokeAll(tasks)) {
+                result.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fuzzy term lookup failed", e.getCause());
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private Map<String, Integer> matchShard(Shard shard, String token, List<String> tokenGrams, int maxDistance) {
+        // Mỗi phép sửa làm mất tối đa GRAM trigram (khác nhau) của token nên từ cách token <= maxDistance phải chung ít nhất ngần này trigram
+        Set<String> distinctGrams = new HashSet<>(tokenGrams);
+        int required = distinctGrams.size() - GRAM * maxDistance;
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : distinctGrams) {
+            Set<String> terms = shard.termsByGram.get(gram);
+            if (terms != null) {
+                for (String term : terms) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        // Token quá ngắn so với maxDistance: bộ lọc trigram không loại được gì, phải xét cả các từ không chung trigram nào
+        Iterable<String> candidates = required > 0 ? shared.keySet() : shard.terms;
+        Map<String, Integer> matches = new HashMap<>();
+        for (String term : candidates) {
+            if (Math.abs(term.length() - token.length()) > maxDistance
+                    || shared.getOrDefault(term, 0) < required) {
+                continue;
+            }
+            int distance = boundedLevenshtein(token, term, maxDistance);
+            if (distance <= maxDistance) {
+                matches.put(term, distance);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Khoảng cách Levenshtein, dừng sớm và trả về maxDistance + 1 khi chắc chắn vượt quá giới hạn
+     */
+    static int boundedLevenshtein(String a, String b, int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // Trigram có đệm "$" hai đầu: từ dài n ký tự có đúng n trigram
+    private static List<String> grams(String term) {
+        String padded = "$" + term + "$";
+        List<String> grams = new ArrayList<>(term.length());
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private Shard shardOf(String term) {
+        return shards[Math.floorMod(term.hashCode(), shards.length)];
+    }
+}
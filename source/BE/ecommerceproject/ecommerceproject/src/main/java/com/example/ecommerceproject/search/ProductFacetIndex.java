@@ -0,0 +1,319 @@
+package com.example.ecommerceproject.search;
+
+import com.example.ecommerceproject.event.CatalogUpdatedEvent;
+import com.example.ecommerceproject.model.Product;
+import com.example.ecommerceproject.model.TagSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục bitmap cho lọc sản phẩm nhiều điều kiện và đếm facet.
+ * - Mỗi sản phẩm có một số thứ tự (ordinal); mỗi brand, loại, tag, khoảng giá và trạng thái còn hàng là một BitSet
+ * - Lọc là phép AND/OR giữa các BitSet; số lượng facet của một nhóm được đếm với bộ lọc của các nhóm còn lại
+ *   để người dùng thấy được sẽ có bao nhiêu sản phẩm nếu chọn thêm một giá trị
+ * - Được cập nhật từng sản phẩm theo CatalogUpdatedEvent; ordinal của sản phẩm đã xóa được dùng lại
+ */
+@Service
+public class ProductFacetIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetIndex.class);
+
+    // Cận dưới của các khoảng giá (VND), khoảng cuối không có cận trên
+    private static final double[] PRICE_BUCKETS = {0, 1_000_000, 3_000_000, 5_000_000, 10_000_000, 20_000_000, 50_000_000};
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    private final BitSet live = new BitSet();
+    private final BitSet inStock = new BitSet();
+    private final Map<String, BitSet> brands = new HashMap<>();
+    private final Map<String, BitSet> productTypes = new HashMap<>();
+    private final Map<String, BitSet> tags = new HashMap<>();
+    private final BitSet[] priceBuckets = new BitSet[PRICE_BUCKETS.length];
+
+    private volatile boolean ready;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private record Entry(String productId, String brandId, String productTypeId, List<String> tagIds,
+                         double price, int priceBucket, boolean inStock) {
+    }
+
+    public record FacetResult(List<String> productIds, Map<String, Map<String, Integer>> facets) {
+    }
+
+    public ProductFacetIndex() {
+        for (int i = 0; i < priceBuckets.length; i++) {
+            priceBuckets[i] = new BitSet();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.isFullReload()) {
+                clear();
+                event.getSnapshot().getAll().forEach(this::indexProduct);
+                ready = true;
+                logger.info("Built product facet index: {} products, {} brands, {} types, {} tags",
+                        live.cardinality(), brands.size(), productTypes.size(), tags.size());
+            } else {
+                event.getRemovedIds().forEach(this::removeProduct);
+                event.getUpserts().forEach(this::indexProduct);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lọc sản phẩm và đếm facet.
+     * @return id sản phẩm khớp (theo thứ tự ordinal) và số lượng cho từng brand, loại, tag, khoảng giá, còn hàng
+     */
+    public FacetResult filter(FacetQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet brandFilter = anyOf(brands, query.getBrandIds());
+            BitSet typeFilter = anyOf(productTypes, query.getProductTypeIds());
+            BitSet tagFilter = query.isMatchAllTags() ? allOf(tags, query.getTagIds()) : anyOf(tags, query.getTagIds());
+            BitSet priceFilter = priceRange(query.getMinPrice(), query.getMaxPrice());
+            BitSet stockFilter = query.isInStockOnly() ? inStock : null;
+
+            BitSet matches = and(brandFilter, typeFilter, tagFilter, priceFilter, stockFilter);
+
+            Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+            facets.put("brands", count(brands, and(typeFilter, tagFilter, priceFilter, stockFilter)));
+            facets.put("productTypes", count(productTypes, and(brandFilter, tagFilter, priceFilter, stockFilter)));
+            facets.put("tags", count(tags, and(brandFilter, typeFilter, priceFilter, stockFilter)));
+            facets.put("priceRanges", countPriceBuckets(and(brandFilter, typeFilter, tagFilter, stockFilter)));
+            facets.put("availability", Map.of("inStock", intersectionCount(inStock, and(brandFilter, typeFilter, tagFilter, priceFilter))));
+
+            List<String> productIds = new ArrayList<>(matches.cardinality());
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                productIds.add(entries.get(i).productId());
+            }
+            return new FacetResult(productIds, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static String priceBucketLabel(int bucket) {
+        long from = (long) PRICE_BUCKETS[bucket];
+        return bucket + 1 < PRICE_BUCKETS.length ? from + "-" + (long) PRICE_BUCKETS[bucket + 1] : from + "+";
+    }
+
+    // OR các bitmap của những giá trị được chọn; null nghĩa là nhóm này không lọc
+    private BitSet anyOf(Map<String, BitSet> index, Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        BitSet result = new BitSet();
+        for (String value : values) {
+            BitSet bits = index.get(value);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    private BitSet allOf(Map<String, BitSet> index, Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        BitSet result = null;
+        for (String value : values) {
+            BitSet bits = index.get(value);
+            if (bits == null) {
+                return new BitSet();
+            }
+            if (result == null) {
+                result = (BitSet) bits.clone();
+            } else {
+                result.and(bits);
+            }
+        }
+        return result;
+    }
+
+    // Các khoảng nằm trọn trong [min, max] lấy nguyên bitmap, hai khoảng ở biên thì kiểm tra giá từng sản phẩm
+    private BitSet priceRange(Double min, Double max) {
+        if (min == null && max == null) {
+            return null;
+        }
+        double low = min != null ? min : Double.NEGATIVE_INFINITY;
+        double high = max != null ? max : Double.POSITIVE_INFINITY;
+
+        BitSet result = new BitSet();
+        for (int bucket = 0; bucket < PRICE_BUCKETS.length; bucket++) {
+            double bucketLow = PRICE_BUCKETS[bucket];
+            double bucketHigh = bucket + 1 < PRICE_BUCKETS.length ? PRICE_BUCKETS[bucket + 1] : Double.POSITIVE_INFINITY;
+            if (bucketHigh <= low || bucketLow > high) {
+                continue;
+            }
+            BitSet bits = priceBuckets[bucket];
+            if (bucketLow >= low && bucketHigh <= high) {
+                result.or(bits);
+            } else {
+                for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                    double price = entries.get(i).price();
+                    if (price >= low && price <= high) {
+                        result.set(i);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private BitSet and(BitSet... filters) {
+        BitSet result = (BitSet) live.clone();
+        for (BitSet filter : filters) {
+            if (filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Integer> count(Map<String, BitSet> index, BitSet filter) {
+        Map<String, Integer> counts = new HashMap<>();
+        index.forEach((value, bits) -> {
+            int count = intersectionCount(bits, filter);
+            if (count > 0) {
+                counts.put(value, count);
+            }
+        });
+        return counts;
+    }
+
+    private Map<String, Integer> countPriceBuckets(BitSet filter) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < PRICE_BUCKETS.length; bucket++) {
+            counts.put(priceBucketLabel(bucket), intersectionCount(priceBuckets[bucket], filter));
+        }
+        return counts;
+    }
+
+    private int intersectionCount(BitSet bits, BitSet filter) {
+        BitSet copy = (BitSet) bits.clone();
+        copy.and(filter);
+        return copy.cardinality();
+    }
+
+    private void indexProduct(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        removeProduct(product.getId());
+
+        double price = product.getPrice() * (1 - product.getDiscountPercent() / 100);
+        List<String> tagIds = new ArrayList<>();
+        if (product.getTags() != null) {
+            for (TagSnapshot tag : product.getTags()) {
+                if (tag != null && tag.getId() != null) {
+                    tagIds.add(tag.getId());
+                }
+            }
+        }
+        Entry entry = new Entry(product.getId(),
+                product.getBrand() != null ? product.getBrand().getId() : null,
+                product.getProductType() != null ? product.getProductType().getId() : null,
+                tagIds, price, priceBucket(price), product.getQuantity() > 0);
+
+        int ordinal = freeOrdinals.isEmpty() ? entries.size() : freeOrdinals.pop();
+        if (ordinal == entries.size()) {
+            entries.add(entry);
+        } else {
+            entries.set(ordinal, entry);
+        }
+        ordinals.put(product.getId(), ordinal);
+
+        live.set(ordinal);
+        inStock.set(ordinal, entry.inStock());
+        priceBuckets[entry.priceBucket()].set(ordinal);
+        if (entry.brandId() != null) {
+            brands.computeIfAbsent(entry.brandId(), id -> new BitSet()).set(ordinal);
+        }
+        if (entry.productTypeId() != null) {
+            productTypes.computeIfAbsent(entry.productTypeId(), id -> new BitSet()).set(ordinal);
+        }
+        for (String tagId : entry.tagIds()) {
+            tags.computeIfAbsent(tagId, id -> new BitSet()).set(ordinal);
+        }
+    }
+
+    private void removeProduct(String productId) {
+        Integer ordinal = ordinals.remove(productId);
+        if (ordinal == null) {
+            return;
+        }
+        Entry entry = entries.get(ordinal);
+        live.clear(ordinal);
+        inStock.clear(ordinal);
+        priceBuckets[entry.priceBucket()].clear(ordinal);
+        clearBit(brands, entry.brandId(), ordinal);
+        clearBit(productTypes, entry.productTypeId(), ordinal);
+        entry.tagIds().forEach(tagId -> clearBit(tags, tagId, ordinal));
+
+        entries.set(ordinal, null);
+        freeOrdinals.push(ordinal);
+    }
+
+    private void clearBit(Map<String, BitSet> index, String value, int ordinal) {
+        if (value == null) {
+            return;
+        }
+        BitSet bits = index.get(value);
+        if (bits != null) {
+            bits.clear(ordinal);
+            if (bits.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    private void clear() {
+        ordinals.clear();
+        entries.clear();
+        freeOrdinals.clear();
+        live.clear();
+        inStock.clear();
+        brands.clear();
+        productTypes.clear();
+        tags.clear();
+        for (BitSet bits : priceBuckets) {
+            bits.clear();
+        }
+    }
+
+    private int priceBucket(double price) {
+        for (int bucket = PRICE_BUCKETS.length - 1; bucket > 0; bucket--) {
+            if (price >= PRICE_BUCKETS[bucket]) {
+                return bucket;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.ecommerceproject.search;
+
+import com.example.ecommerceproject.event.CatalogUpdatedEvent;
+import com.example.ecommerceproject.model.Product;
+import org.slf4j.Logger;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục đảo (inverted index) cho tìm kiếm sản phẩm trong bộ nhớ, xếp hạng bằng BM25.
+ * - Đánh chỉ mục tên, mô tả, brand, loại sản phẩm và thông số kỹ thuật sau khi bỏ dấu; mỗi trường có trọng số riêng
+ * - Từ cuối của câu truy vấn được so khớp theo tiền tố để tìm được khi người dùng đang gõ dở
+ * - Chế độ fuzzy: mỗi từ truy vấn được mở rộng thêm các từ gần giống trong từ điển (trigram + Levenshtein có giới hạn)
+ * - Được cập nhật từng sản phẩm theo CatalogUpdatedEvent, dựng lại toàn bộ khi danh mục được nạp lại
+ */
+@Service
+public class ProductSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final float NAME_WEIGHT = 3f;
+    private static final float BRAND_WEIGHT = 2f;
+    private static final float TYPE_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    private static final float SPEC_WEIGHT = 1f;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Điểm của từ chỉ khớp tiền tố thấp hơn từ khớp nguyên vẹn
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+    // Điểm của từ sửa lỗi chính tả giảm theo khoảng cách Levenshtein
+    private static final double[] FUZZY_FACTORS = {1.0, 0.6, 0.4};
+
+    private final NavigableMap<String, Map<String, Float>> postings = new TreeMap<>(); // từ -> (productId -> tần suất có trọng số)
+    private final Map<String, Document> documents = new HashMap<>();
+    private double totalLength;
+    private volatile boolean ready;
+
+    private final FuzzyTermIndex fuzzyTerms;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public ProductSearchIndex(@Value("${search.fuzzy.shards:4}") int fuzzyShards) {
+        this.fuzzyTerms = new FuzzyTermIndex(fuzzyShards);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fuzzyTerms.close();
+    }
+
+    private record Document(Map<String, Float> termFrequencies, float length) {
+    }
+
+    private record Hit(String productId, double score) {
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        // Tồn kho/soldCount không được đánh chỉ mục
+        if (event.isStockOnly()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (event.isFullReload()) {
+                postings.clear();
+                documents.clear();
+                fuzzyTerms.clear();
+                totalLength = 0;
+                event.getSnapshot().getAll().forEach(this::indexProduct);
+                ready = true;
+                logger.info("Built product search index: {} products, {} terms", documents.size(), postings.size());
+            } else {
+                event.getRemovedIds().forEach(this::removeProduct);
+                event.getUpserts().forEach(this::indexProduct);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm sản phẩm theo câu truy vấn, trả về id đã xếp hạng theo điểm BM25 giảm dần.
+     * Nếu có sản phẩm khớp đủ tất cả các từ thì chỉ trả về các sản phẩm đó.
+     * @param fuzzy true để chấp nhận các từ gõ sai 1-2 ký tự
+     */
+    public List<String> search(String query, int limit, boolean fuzzy) {
+        List<String> queryTerms = TextNormalizer.tokenize(query);
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Integer> matchedTerms = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            if (documents.isEmpty()) {
+                return List.of();
+            }
+            double averageLength = totalLength / documents.size();
+
+            for (int i = 0; i < queryTerms.size(); i++) {
+                String term = queryTerms.get(i);
+                Map<String, Double> termScores = new HashMap<>();
+                scoreTerm(term, 1.0, averageLength, termScores);
+                if (i == queryTerms.size() - 1) {
+                    for (String expansion : prefixExpansions(term)) {
+                        scoreTerm(expansion, PREFIX_FACTOR, averageLength, termScores);
+                    }
+                }
+                if (fuzzy) {
+                    int maxDistance = maxEditDistance(term);
+                    if (maxDistance > 0) {
+                        fuzzyTerms.match(term, maxDistance).forEach((match, distance) ->
+                                scoreTerm(match, FUZZY_FACTORS[distance], averageLength, termScores));
+                    }
+                }
+                termScores.forEach((productId, score) -> {
+                    scores.merge(productId, score, Double::sum);
+                    matchedTerms.merge(productId, 1, Integer::sum);
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        boolean anyMatchesAll = matchedTerms.values().stream().anyMatch(count -> count == queryTerms.size());
+        List<Hit> hits = new ArrayList<>();
+        scores.forEach((productId, score) -> {
+            if (!anyMatchesAll || matchedTerms.get(productId) == queryTerms.size()) {
+                hits.add(new Hit(productId, score));
+            }
+        });
+        hits.sort((a, b) -> Double.compare(b.score(), a.score()));
+
+        return hits.stream().limit(limit).map(Hit::productId).toList();
+    }
+
+    // Cộng điểm BM25 của một từ vào termScores (lấy điểm lớn nhất nếu sản phẩm khớp nhiều dạng của cùng một từ truy vấn)
+    private void scoreTerm(String term, double factor, double averageLength, Map<String, Double> termScores) {
+        Map<String, Float> postingList = postings.get(term);
+        if (postingList == null) {
+            return;
+        }
+        int n = documents.size();
+        double idf = Math.log(1 + (n - postingList.size() + 0.5) / (postingList.size() + 0.5));
+        postingList.forEach((productId, tf) -> {
+            double length = documents.get(productId).length();
+            double score = idf * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * length / averageLength)) * factor;
+            termScores.merge(productId, score, Math::max);
+        });
+    }
+
+    // Từ ngắn dễ khớp nhầm nên chỉ cho phép sai với từ từ 4 ký tự trở lên; số (như 4070) phải khớp chính xác
+    private int maxEditDistance(String term) {
+        if (term.length() < 4 || term.chars().allMatch(Character::isDigit)) {
+            return 0;
+        }
+        return term.length() < 7 ? 1 : 2;
+    }
+
+    private List<String> prefixExpansions(String prefix) {
+        List<String> expansions = new ArrayList<>();
+        for (String term : postings.subMap(prefix, false, prefix + Character.MAX_VALUE, false).keySet()) {
+            if (expansions.size() >= MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            expansions.add(term);
+        }
+        return expansions;
+    }
+
+    private void indexProduct(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        removeProduct(product.getId());
+
+        Map<String, Float> frequencies = new HashMap<>();
+        addField(frequencies, product.getName(), NAME_WEIGHT);
+        addField(frequencies, product.getDescription(), DESCRIPTION_WEIGHT);
+        if (product.getBrand() != null) {
+            addField(frequencies, product.getBrand().getName(), BRAND_WEIGHT);
+        }
+        if (product.getProductType() != null) {
+            addField(frequencies, product.getProductType().getName(), TYPE_WEIGHT);
+        }
+        if (product.getSpecifications() != null) {
+            addFields(frequencies, product.getSpecifications().values(), SPEC_WEIGHT);
+        }
+
+        float length = 0;
+        for (Map.Entry<String, Float> entry : frequencies.entrySet()) {
+            Map<String, Float> postingList = postings.get(entry.getKey());
+            if (postingList == null) {
+                postingList = new HashMap<>();
+                postings.put(entry.getKey(), postingList);
+                fuzzyTerms.add(entry.getKey());
+            }
+            postingList.put(product.getId(), entry.getValue());
+            length += entry.getValue();
+        }
+        documents.put(product.getId(), new Document(frequencies, length));
+        totalLength += length;
+    }
+
+    private void removeProduct(String productId) {
+        Document document = documents.remove(productId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.termFrequencies().keySet()) {
+            Map<String, Float> postingList = postings.get(term);
+            if (postingList != null) {
+                postingList.remove(productId);
+                if (postingList.isEmpty()) {
+                    postings.remove(term);
+                    fuzzyTerms.remove(term);
+                }
+            }
+        }
+        totalLength -= document.length();
+    }
+
+    private void addFields(Map<String, Float> frequencies, Collection<String> values, float weight) {
+        for (String value : values) {
+            addField(frequencies, value, weight);
+        }
+    }
+
+    private void addField(Map<String, Float> frequencies, String text, float weight) {
+        for (String token : TextNormalizer.tokenize(text)) {
+            frequencies.merge(token, weight, Float::sum);
+        }
+    }
+}
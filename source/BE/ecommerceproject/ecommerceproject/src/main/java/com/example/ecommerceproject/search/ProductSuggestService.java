@@ -0,0 +1,179 @@
+package com.example.ecommerceproject.search;
+
+import com.example.ecommerceproject.event.CatalogUpdatedEvent;
+import com.example.ecommerceproject.model.BrandSnapshot;
+import com.example.ecommerceproject.model.Product;
+import com.example.ecommerceproject.model.ProductTypeSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Gợi ý khi gõ ô tìm kiếm từ tên sản phẩm, brand và loại sản phẩm, dùng trie nén trên chuỗi đã bỏ dấu.
+ * - Mỗi cụm được đánh chỉ mục từ đầu cụm và từ đầu mỗi từ phía sau, nên "990" vẫn gợi ý "Samsung 990 Pro"
+ * - Trọng số là soldCount của sản phẩm; brand và loại sản phẩm lấy tổng soldCount của các sản phẩm thuộc về nó
+ * - Được cập nhật từng sản phẩm theo CatalogUpdatedEvent
+ */
+@Service
+public class ProductSuggestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSuggestService.class);
+
+    private static final String PRODUCT = "product";
+    private static final String BRAND = "brand";
+    private static final String PRODUCT_TYPE = "productType";
+    // Số từ đầu tiên được dùng làm điểm bắt đầu của khóa, tránh phình trie với tên quá dài
+    private static final int MAX_WORD_OFFSETS = 6;
+
+    private final RadixTrie trie = new RadixTrie();
+    private final Map<String, Suggestion> suggestions = new HashMap<>();   // khóa nguồn (type:id) -> gợi ý
+    private final Map<String, List<String>> keysBySource = new HashMap<>();
+    private final Map<String, ProductContribution> products = new HashMap<>();
+    private final Map<String, Long> groupWeights = new HashMap<>();         // brand:id / productType:id -> tổng soldCount
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public record Suggestion(String type, String id, String text, long weight) {
+    }
+
+    private record ProductContribution(String brandSource, String typeSource, long soldCount) {
+    }
+
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.isFullReload()) {
+                for (String source : new ArrayList<>(suggestions.keySet())) {
+                    removeSource(source);
+                }
+                products.clear();
+                groupWeights.clear();
+                event.getSnapshot().getAll().forEach(this::indexProduct);
+                logger.info("Built suggestion trie: {} suggestions, {} keys", suggestions.size(), trie.size());
+            } else {
+                event.getRemovedIds().forEach(this::removeProduct);
+                event.getUpserts().forEach(this::indexProduct);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tối đa limit gợi ý cho chuỗi đang gõ, sắp xếp theo trọng số giảm dần
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String prefix = String.join(" ", TextNormalizer.tokenize(query));
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        // Giữ khoảng trắng cuối để "rtx " chỉ khớp các từ bắt đầu sau "rtx"
+        if (Character.isWhitespace(query.charAt(query.length() - 1))) {
+            prefix += " ";
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Suggestion> result = new ArrayList<>();
+            for (String source : trie.topK(prefix, limit)) {
+                Suggestion suggestion = suggestions.get(source);
+                if (suggestion != null) {
+                    result.add(suggestion);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void indexProduct(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        removeProduct(product.getId());
+
+        BrandSnapshot brand = product.getBrand();
+        ProductTypeSnapshot productType = product.getProductType();
+        String brandSource = brand != null && brand.getId() != null ? BRAND + ":" + brand.getId() : null;
+        String typeSource = productType != null && productType.getId() != null ? PRODUCT_TYPE + ":" + productType.getId() : null;
+        long soldCount = product.getSoldCount();
+
+        products.put(product.getId(), new ProductContribution(brandSource, typeSource, soldCount));
+        putSource(new Suggestion(PRODUCT, product.getId(), product.getName(), soldCount));
+        if (brandSource != null) {
+            adjustGroup(brandSource, BRAND, brand.getId(), brand.getName(), soldCount);
+        }
+        if (typeSource != null) {
+            adjustGroup(typeSource, PRODUCT_TYPE, productType.getId(), productType.getName(), soldCount);
+        }
+    }
+
+    private void removeProduct(String productId) {
+        ProductContribution contribution = products.remove(productId);
+        if (contribution == null) {
+            return;
+        }
+        removeSource(PRODUCT + ":" + productId);
+        if (contribution.brandSource() != null) {
+            adjustGroup(contribution.brandSource(), null, null, null, -contribution.soldCount());
+        }
+        if (contribution.typeSource() != null) {
+            adjustGroup(contribution.typeSource(), null, null, null, -contribution.soldCount());
+        }
+    }
+
+    // Cộng/trừ soldCount vào brand hoặc loại sản phẩm; tên mới (nếu có) thay tên đang gợi ý
+    private void adjustGroup(String source, String type, String id, String name, long delta) {
+        long weight = groupWeights.merge(source, delta, Long::sum);
+        Suggestion current = suggestions.get(source);
+        if (type == null) {
+            if (current != null) {
+                putSource(new Suggestion(current.type(), current.id(), current.text(), weight));
+            }
+            return;
+        }
+        String text = name != null ? name : current != null ? current.text() : null;
+        putSource(new Suggestion(type, id, text, weight));
+    }
+
+    private void putSource(Suggestion suggestion) {
+        String source = suggestion.type() + ":" + suggestion.id();
+        removeSource(source);
+        List<String> keys = keysFor(suggestion.text());
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            trie.put(key, source, suggestion.weight());
+        }
+        suggestions.put(source, suggestion);
+        keysBySource.put(source, keys);
+    }
+
+    private void removeSource(String source) {
+        suggestions.remove(source);
+        List<String> keys = keysBySource.remove(source);
+        if (keys != null) {
+            keys.forEach(key -> trie.remove(key, source));
+        }
+    }
+
+    private List<String> keysFor(String text) {
+        List<String> tokens = TextNormalizer.tokenize(text);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < tokens.size() && i < MAX_WORD_OFFSETS; i++) {
+            keys.add(String.join(" ", tokens.subList(i, tokens.size())));
+        }
+        return keys;
+    }
+}
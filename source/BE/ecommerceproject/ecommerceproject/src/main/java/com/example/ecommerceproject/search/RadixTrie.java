@@ -0,0 +1,190 @@
+package com.example.ecommerceproject.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Trie nén (radix trie): mỗi cạnh mang một đoạn chuỗi thay vì một ký tự.
+ * - Mỗi khóa gắn với một hoặc nhiều giá trị có trọng số; mỗi nút lưu trọng số lớn nhất trong cây con
+ *   nên topK duyệt theo thứ tự tốt nhất trước và dừng ngay khi đủ k kết quả
+ * - Không thread-safe, nơi sử dụng tự đồng bộ
+ */
+public class RadixTrie {
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final Map<String, Long> values = new HashMap<>();
+        private String label;
+        private long maxWeight = Long.MIN_VALUE;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private void recomputeMax() {
+            long max = Long.MIN_VALUE;
+            for (long weight : values.values()) {
+                max = Math.max(max, weight);
+            }
+            for (Node child : children.values()) {
+                max = Math.max(max, child.maxWeight);
+            }
+            maxWeight = max;
+        }
+    }
+
+    private record Candidate(Node node, String value, long weight) {
+    }
+
+    private final Node root = new Node("");
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public void put(String key, String value, long weight) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+
+        while (position < key.length()) {
+            Node child = node.children.get(key.charAt(position));
+            if (child == null) {
+                child = new Node(key.substring(position));
+                node.children.put(child.label.charAt(0), child);
+                node = child;
+                path.add(node);
+                position = key.length();
+                break;
+            }
+
+            int common = commonPrefix(child.label, key, position);
+            if (common < child.label.length()) {
+                // Tách cạnh: child.label = phần chung + phần còn lại
+                Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.children.put(child.label.charAt(0), child);
+                split.recomputeMax();
+                node.children.put(split.label.charAt(0), split);
+                child = split;
+            }
+            node = child;
+            path.add(node);
+            position += common;
+        }
+
+        if (node.values.put(value, weight) == null) {
+            size++;
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).recomputeMax();
+        }
+    }
+
+    public void remove(String key, String value) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+
+        while (position < key.length()) {
+            Node child = node.children.get(key.charAt(position));
+            if (child == null || !key.startsWith(child.label, position)) {
+                return;
+            }
+            node = child;
+            path.add(node);
+            position += child.label.length();
+        }
+
+        if (node.values.remove(value) == null) {
+            return;
+        }
+        size--;
+
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node current = path.get(i);
+            Node parent = path.get(i - 1);
+            if (current.values.isEmpty() && current.children.isEmpty()) {
+                parent.children.remove(current.label.charAt(0));
+            } else if (current.values.isEmpty() && current.children.size() == 1) {
+                // Gộp nút trung gian không còn giá trị với nút con duy nhất để trie luôn được nén
+                Node only = current.children.values().iterator().next();
+                only.label = current.label + only.label;
+                parent.children.put(only.label.charAt(0), only);
+            } else {
+                current.recomputeMax();
+            }
+        }
+        root.recomputeMax();
+    }
+
+    /**
+     * Trả về tối đa k giá trị khác nhau có khóa bắt đầu bằng prefix, trọng số giảm dần
+     */
+    public List<String> topK(String prefix, int k) {
+        Node start = find(prefix);
+        List<String> result = new ArrayList<>();
+        if (start == null || k <= 0) {
+            return result;
+        }
+
+        Set<String> seen = new HashSet<>();
+        PriorityQueue<Candidate> queue = new PriorityQueue<>((a, b) -> Long.compare(b.weight(), a.weight()));
+        queue.add(new Candidate(start, null, start.maxWeight));
+
+        while (!queue.isEmpty() && result.size() < k) {
+            Candidate candidate = queue.poll();
+            if (candidate.value() != null) {
+                if (seen.add(candidate.value())) {
+                    result.add(candidate.value());
+                }
+                continue;
+            }
+            Node node = candidate.node();
+            node.values.forEach((value, weight) -> queue.add(new Candidate(null, value, weight)));
+            for (Node child : node.children.values()) {
+                queue.add(new Candidate(child, null, child.maxWeight));
+            }
+        }
+        return result;
+    }
+
+    // Nút đầu tiên mà mọi khóa trong cây con đều bắt đầu bằng prefix
+    private Node find(String prefix) {
+        Node node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            Node child = node.children.get(prefix.charAt(position));
+            if (child == null) {
+                return null;
+            }
+            int common = commonPrefix(child.label, prefix, position);
+            if (position + common == prefix.length()) {
+                return child;
+            }
+            if (common < child.label.length()) {
+                return null;
+            }
+            node = child;
+            position += common;
+        }
+        return node;
+    }
+
+    private int commonPrefix(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -33,7 +33,7 @@ public class CorsFilter extends OncePerRequestFilter {
         
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS, PATCH");
         response.setHeader("Access-Control-Max-Age", "3600");
-        response.setHeader("Access-Control-Allow-Headers", "authorization, content-type, x-auth-token, x-requested-with, accept, origin, access-control-request-method, access-control-request-headers");
+        response.setHeader("Access-Control-Allow-Headers", "authorization, content-type, x-auth-token, x-requested-with, accept, origin, access-control-request-method, access-control-request-headers, idempotency-key");
         response.setHeader("Access-Control-Expose-Headers", "x-auth-token, authorization");
         
         if ("OPTIONS".equals(request.getMethod())) {
@@ -0,0 +1,111 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Brand;
+import com.example.ecommerceproject.model.BrandSnapshot;
+import com.example.ecommerceproject.model.Product;
+import com.example.ecommerceproject.model.ProductType;
+import com.example.ecommerceproject.model.ProductTypeSnapshot;
+import com.example.ecommerceproject.model.Tag;
+import com.example.ecommerceproject.model.TagSnapshot;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+/**
+ * Đồng bộ bản sao brand/productType/tag nhúng trong Product khi bản gốc được sửa hoặc xóa.
+ * - Chạy nền trên một luồng riêng để request sửa brand không phải chờ cập nhật hàng nghìn sản phẩm
+ * - Mỗi thay đổi là một lệnh updateMany; MongoDB không ghi lại sản phẩm đã có giá trị giống hệt,
+ *   nên lưu brand mà không đổi tên sẽ không ghi gì và không làm nạp lại ProductCatalog
+ */
+@Component
+public class CatalogReferencePropagator extends AbstractMongoEventListener<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogReferencePropagator.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductCatalog productCatalog;
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("catalog-propagation").factory());
+
+    @Autowired
+    public CatalogReferencePropagator(MongoTemplate mongoTemplate, ProductCatalog productCatalog) {
+        this.mongoTemplate = mongoTemplate;
+        this.productCatalog = productCatalog;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        Object source = event.getSource();
+        if (source instanceof Brand brand) {
+            submit("brand " + brand.getId(), () -> mongoTemplate.updateMulti(
+                    new Query(Criteria.where("brand.id").is(brand.getId())),
+                    new Update().set("brand", BrandSnapshot.of(brand)),
+                    Product.class).getModifiedCount());
+        } else if (source instanceof ProductType productType) {
+            submit("product type " + productType.getId(), () -> mongoTemplate.updateMulti(
+                    new Query(Criteria.where("productType.id").is(productType.getId())),
+                    new Update().set("productType", ProductTypeSnapshot.of(productType)),
+                    Product.class).getModifiedCount());
+        } else if (source instanceof Tag tag) {
+            // Mỗi sản phẩm chứa một tag nhiều nhất một lần nên toán tử vị trí $ là đủ
+            submit("tag " + tag.getId(), () -> mongoTemplate.updateMulti(
+                    new Query(Criteria.where("tags.id").is(tag.getId())),
+                    new Update().set("tags.$", TagSnapshot.of(tag)),
+                    Product.class).getModifiedCount());
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        // Câu lệnh xóa đã được ánh xạ sang dạng lưu trong DB, dùng thẳng giá trị _id để khớp với bản sao nhúng
+        Object id = event.getSource().get("_id");
+        if (id == null || id instanceof Document) {
+            return;
+        }
+        Class<?> type = event.getType();
+        if (type == Brand.class) {
+            submit("deleted brand " + id, () -> mongoTemplate.updateMulti(
+                    new BasicQuery(new Document("brand._id", id)), new Update().unset("brand"), Product.class).getModifiedCount());
+        } else if (type == ProductType.class) {
+            submit("deleted product type " + id, () -> mongoTemplate.updateMulti(
+                    new BasicQuery(new Document("productType._id", id)), new Update().unset("productType"), Product.class).getModifiedCount());
+        } else if (type == Tag.class) {
+            submit("deleted tag " + id, () -> mongoTemplate.updateMulti(
+                    new BasicQuery(new Document("tags._id", id)), new Update().pull("tags", new Document("_id", id)), Product.class).getModifiedCount());
+        }
+    }
+
+    private void submit(String description, LongSupplier update) {
+        executor.execute(() -> {
+            try {
+                long modified = update.getAsLong();
+                if (modified > 0) {
+                    logger.info("Propagated {} to {} products", description, modified);
+                    productCatalog.reloadIfLoaded();
+                }
+            } catch (Exception e) {
+                logger.error("Không thể cập nhật bản sao {} trong sản phẩm", description, e);
+            }
+        });
+    }
+}
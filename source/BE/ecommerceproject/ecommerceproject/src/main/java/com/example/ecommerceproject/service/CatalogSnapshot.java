@@ -0,0 +1,109 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.BrandSnapshot;
+import com.example.ecommerceproject.model.Product;
+import com.example.ecommerceproject.model.ProductTypeSnapshot;
+import com.example.ecommerceproject.model.TagSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bản chụp bất biến của danh mục sản phẩm, đánh chỉ mục theo id, brand, productType và tag.
+ * Không bao giờ bị sửa sau khi tạo: mỗi thay đổi tạo ra một bản chụp mới (copy-on-write).
+ */
+public final class CatalogSnapshot {
+
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(new LinkedHashMap<>());
+
+    private final Map<String, Product> byId;
+    private final List<Product> all;
+    private final Map<String, List<Product>> byBrand;
+    private final Map<String, List<Product>> byProductType;
+    private final Map<String, List<Product>> byTag;
+
+    private CatalogSnapshot(LinkedHashMap<String, Product> products) {
+        Map<String, List<Product>> brands = new HashMap<>();
+        Map<String, List<Product>> productTypes = new HashMap<>();
+        Map<String, List<Product>> tags = new HashMap<>();
+
+        for (Product product : products.values()) {
+            BrandSnapshot brand = product.getBrand();
+            if (brand != null && brand.getId() != null) {
+                brands.computeIfAbsent(brand.getId(), id -> new ArrayList<>()).add(product);
+            }
+            ProductTypeSnapshot productType = product.getProductType();
+            if (productType != null && productType.getId() != null) {
+                productTypes.computeIfAbsent(productType.getId(), id -> new ArrayList<>()).add(product);
+            }
+            if (product.getTags() != null) {
+                for (TagSnapshot tag : product.getTags()) {
+                    if (tag != null && tag.getId() != null) {
+                        tags.computeIfAbsent(tag.getId(), id -> new ArrayList<>()).add(product);
+                    }
+                }
+            }
+        }
+
+        this.byId = Collections.unmodifiableMap(products);
+        this.all = List.copyOf(products.values());
+        this.byBrand = freeze(brands);
+        this.byProductType = freeze(productTypes);
+        this.byTag = freeze(tags);
+    }
+
+    public static CatalogSnapshot of(Collection<Product> products) {
+        LinkedHashMap<String, Product> map = new LinkedHashMap<>();
+        for (Product product : products) {
+            map.put(product.getId(), product);
+        }
+        return new CatalogSnapshot(map);
+    }
+
+    /**
+     * Tạo bản chụp mới với các sản phẩm được thay thế/thêm và các id bị xóa; bản chụp hiện tại giữ nguyên
+     */
+    public CatalogSnapshot withChanges(Collection<Product> upserts, Collection<String> removedIds) {
+        LinkedHashMap<String, Product> map = new LinkedHashMap<>(byId);
+        removedIds.forEach(map::remove);
+        for (Product product : upserts) {
+            map.put(product.getId(), product);
+        }
+        return new CatalogSnapshot(map);
+    }
+
+    public List<Product> getAll() {
+        return all;
+    }
+
+    public Product getById(String id) {
+        return byId.get(id);
+    }
+
+    public List<Product> getByBrand(String brandId) {
+        return byBrand.getOrDefault(brandId, List.of());
+    }
+
+    public List<Product> getByProductType(String productTypeId) {
+        return byProductType.getOrDefault(productTypeId, List.of());
+    }
+
+    public List<Product> getByTag(String tagId) {
+        return byTag.getOrDefault(tagId, List.of());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private static Map<String, List<Product>> freeze(Map<String, List<Product>> index) {
+        Map<String, List<Product>> frozen = new HashMap<>(index.size());
+        index.forEach((key, products) -> frozen.put(key, List.copyOf(products)));
+        return Collections.unmodifiableMap(frozen);
+    }
+}
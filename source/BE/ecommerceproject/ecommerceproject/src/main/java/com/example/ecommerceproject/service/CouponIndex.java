@@ -0,0 +1,167 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Coupon;
+import com.example.ecommerceproject.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Tra cứu coupon theo code trong bộ nhớ cho các lần kiểm tra mã khi người dùng đang gõ.
+ * - Bloom filter chứa tất cả code: code chắc chắn không tồn tại bị loại ngay, không truy vấn MongoDB
+ * - Coupon hay dùng được giữ trong cache LRU có thời gian sống; cache được cập nhật khi tạo/sửa/xóa/áp dụng coupon
+ * - Bloom filter được dựng lại định kỳ để nhận thay đổi từ các instance khác
+ */
+@Service
+public class CouponIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CouponIndex.class);
+
+    private static final int MIN_EXPECTED_CODES = 1024;
+
+    private final CouponRepository couponRepository;
+    private final MongoTemplate mongoTemplate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double falsePositiveRate;
+    private final Map<String, CachedCoupon> cache;
+
+    // null khi chưa dựng xong: mọi code đều được tra trong DB
+    private volatile BloomFilter knownCodes;
+
+    // Code được put trong lúc đang dựng lại, thêm vào filter mới trước khi thay; null khi không dựng lại
+    private final Object filterLock = new Object();
+    private List<String> codesDuringRebuild;
+
+    @Autowired
+    public CouponIndex(CouponRepository couponRepository,
+                       MongoTemplate mongoTemplate,
+                       @Value("${coupons.cache.max-entries:1000}") int maxEntries,
+                       @Value("${coupons.cache.ttl-ms:60000}") long ttlMillis,
+                       @Value("${coupons.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.couponRepository = couponRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.falsePositiveRate = falsePositiveRate;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCoupon> eldest) {
+                return size() > CouponIndex.this.maxEntries;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${coupons.bloom.refresh-ms:300000}", fixedDelayString = "${coupons.bloom.refresh-ms:300000}")
+    public synchronized void rebuild() {
+        try {
+            long total = mongoTemplate.estimatedCount(Coupon.class);
+            // Dư chỗ gấp đôi để các coupon tạo thêm trước lần dựng lại sau không làm tăng tỉ lệ dương tính giả
+            BloomFilter filter = new BloomFilter((int) Math.max(total * 2, MIN_EXPECTED_CODES), falsePositiveRate);
+            synchronized (filterLock) {
+                codesDuringRebuild = new ArrayList<>();
+            }
+
+            Query query = new Query();
+            query.fields().include("code");
+            int count = 0;
+            try (Stream<Coupon> coupons = mongoTemplate.stream(query, Coupon.class)) {
+                for (Coupon coupon : (Iterable<Coupon>) coupons::iterator) {
+                    if (coupon.getCode() != null) {
+                        filter.put(coupon.getCode());
+                        count++;
+                    }
+                }
+            }
+            // Coupon tạo/sửa trong lúc stream có thể chưa nằm trong filter mới: thêm vào rồi mới thay
+            synchronized (filterLock) {
+                codesDuringRebuild.forEach(filter::put);
+                codesDuringRebuild = null;
+                knownCodes = filter;
+            }
+            logger.debug("Rebuilt coupon Bloom filter with {} codes", count);
+        } catch (Exception e) {
+            synchronized (filterLock) {
+                codesDuringRebuild = null;
+            }
+            logger.error("Không thể dựng Bloom filter cho coupon", e);
+        }
+    }
+
+    /**
+     * Tìm coupon theo code, trả về null nếu không tồn tại (không ném exception)
+     */
+    public Coupon find(String code) {
+        if (code == null || code.isBlank()) {
+            return null;
+        }
+        BloomFilter filter = knownCodes;
+        if (filter != null && !filter.mightContain(code)) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedCoupon cached = cache.get(code);
+            if (cached != null && cached.expiresAt() > now) {
+                return cached.coupon();
+            }
+        }
+
+        // Bloom filter dương tính giả cũng được cache (coupon null) để không truy vấn lại liên tục
+        Coupon coupon = couponRepository.findByCode(code).orElse(null);
+        synchronized (cache) {
+            cache.put(code, new CachedCoupon(coupon, now + ttlMillis));
+        }
+        return coupon;
+    }
+
+    // Gọi sau khi coupon được tạo, sửa hoặc vừa được áp dụng vào đơn hàng
+    public void put(Coupon coupon) {
+        if (coupon == null || coupon.getCode() == null) {
+            return;
+        }
+        synchronized (filterLock) {
+            BloomFilter filter = knownCodes;
+            if (filter != null) {
+                filter.put(coupon.getCode());
+            }
+            if (codesDuringRebuild != null) {
+                codesDuringRebuild.add(coupon.getCode());
+            }
+        }
+        synchronized (cache) {
+            cache.put(coupon.getCode(), new CachedCoupon(coupon, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    public void evict(String code) {
+        synchronized (cache) {
+            cache.remove(code);
+        }
+    }
+
+    // Code cũ của coupon bị sửa/xóa không biết trước: xóa toàn bộ cache, Bloom filter chỉ còn dương tính thừa cho tới lần dựng lại
+    public void evictAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private record CachedCoupon(Coupon coupon, long expiresAt) {
+    }
+}
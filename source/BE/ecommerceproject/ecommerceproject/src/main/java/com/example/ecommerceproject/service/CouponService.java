@@ -1,29 +1,64 @@
 package com.example.ecommerceproject.service;
 
 import com.example.ecommerceproject.model.Coupon;
+import com.example.ecommerceproject.model.CouponRedemption;
 import com.example.ecommerceproject.repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.Map;
 import java.util.HashMap;
 
 @Service
 public class CouponService {
 
+    private static final Logger logger = LoggerFactory.getLogger(CouponService.class);
+
     @Autowired
     private CouponRepository couponRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CouponIndex couponIndex;
+
     // Thêm coupon mới
     public Coupon createCoupon(Coupon coupon) {
-        return couponRepository.save(coupon);
+        Coupon saved = couponRepository.save(coupon);
+        couponIndex.put(saved);
+        return saved;
     }
 
-    // Lấy tất cả coupon
+    // Lấy tất cả coupon, kèm danh sách đơn đã áp dụng lấy từ coupon_redemptions bằng một truy vấn
     public List<Coupon> getAllCoupons() {
-        return couponRepository.findAll();
+        List<Coupon> coupons = couponRepository.findAll();
+        if (coupons.isEmpty()) {
+            return coupons;
+        }
+
+        Query query = new Query(Criteria.where("couponId").in(coupons.stream().map(Coupon::getId).toList()))
+                .with(Sort.by("redeemedAt"));
+        query.fields().include("couponId", "orderId");
+
+        Map<String, List<String>> ordersByCoupon = new HashMap<>();
+        for (CouponRedemption redemption : mongoTemplate.find(query, CouponRedemption.class)) {
+            ordersByCoupon.computeIfAbsent(redemption.getCouponId(), id -> new ArrayList<>()).add(redemption.getOrderId());
+        }
+        coupons.forEach(coupon -> coupon.setOrdersApplied(ordersByCoupon.getOrDefault(coupon.getId(), new ArrayList<>())));
+        return coupons;
     }
 
     // Lấy coupon theo id
@@ -34,58 +69,92 @@ public class CouponService {
 
     // Lấy coupon theo code
     public Coupon getCouponByCode(String code) {
-        return couponRepository.findByCode(code)
-                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy coupon với code: " + code));
+        Coupon coupon = couponIndex.find(code);
+        if (coupon == null) {
+            throw new IllegalArgumentException("Không tìm thấy coupon với code: " + code);
+        }
+        return coupon;
     }
 
-    // Kiểm tra coupon có hợp lệ không
+    // Kiểm tra coupon có hợp lệ không; code không tồn tại bị Bloom filter loại mà không truy vấn DB
     public boolean validateCoupon(String code) {
-        try {
-            Coupon coupon = getCouponByCode(code);
-            return coupon.isValid();
-        } catch (Exception e) {
-            return false;
-        }
+        Coupon coupon = couponIndex.find(code);
+        return coupon != null && coupon.isValid();
     }
 
     // Lấy thông tin chi tiết về coupon
     public Map<String, Object> getCouponDetails(String code) {
         Map<String, Object> details = new HashMap<>();
-        try {
-            Coupon coupon = getCouponByCode(code);
-            details.put("valid", coupon.isValid());
-            details.put("code", coupon.getCode());
-            details.put("value", coupon.getValue());
-            details.put("remainingUses", coupon.getMaxUses() - coupon.getUsedCount());
-            return details;
-        } catch (Exception e) {
+        Coupon coupon = couponIndex.find(code);
+        if (coupon == null) {
             details.put("valid", false);
             details.put("message", "Coupon không tồn tại");
             return details;
         }
+        details.put("valid", coupon.isValid());
+        details.put("code", coupon.getCode());
+        details.put("value", coupon.getValue());
+        details.put("remainingUses", coupon.getMaxUses() - coupon.getUsedCount());
+        return details;
     }
 
     // Áp dụng coupon vào order
+    // - Ghi coupon_redemptions trước: index unique (couponId, orderId) chặn việc áp dụng hai lần cho một đơn
+    // - Sau đó tăng usedCount bằng findAndModify có điều kiện usedCount < maxUses nên không vượt số lượt cho phép
     public boolean applyCouponToOrder(String code, String orderId) {
+        Coupon coupon = couponIndex.find(code);
+        if (coupon == null) {
+            return false;
+        }
+
+        CouponRedemption redemption;
+        try {
+            redemption = mongoTemplate.insert(new CouponRedemption(coupon.getId(), coupon.getCode(), orderId));
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+
+        Query query = new Query(Criteria.where("_id").is(coupon.getId())
+                .andOperator(Criteria.expr(ComparisonOperators.valueOf("usedCount").lessThan("maxUses"))));
+        Coupon updated;
         try {
-            Coupon coupon = getCouponByCode(code);
-            boolean applied = coupon.applyToOrder(orderId);
-            if (applied) {
-                couponRepository.save(coupon);
-            }
-            return applied;
-        } catch (Exception e) {
+            updated = mongoTemplate.findAndModify(query, new Update().inc("usedCount", 1),
+                    FindAndModifyOptions.options().returnNew(true), Coupon.class);
+        } catch (RuntimeException e) {
+            // Bỏ bản ghi vừa tạo để lần thử lại cho cùng đơn không bị index unique chặn
+            removeRedemption(redemption);
+            throw e;
+        }
+
+        if (updated == null) {
+            // Hết lượt sử dụng: bỏ bản ghi vừa tạo
+            mongoTemplate.remove(redemption);
+            couponIndex.evict(coupon.getCode());
             return false;
         }
+        couponIndex.put(updated);
+        return true;
+    }
+
+    private void removeRedemption(CouponRedemption redemption) {
+        try {
+            mongoTemplate.remove(redemption);
+        } catch (RuntimeException e) {
+            logger.error("Không thể xóa coupon_redemptions {} sau khi tăng usedCount thất bại", redemption.getId(), e);
+        }
     }
 
     // Cập nhật coupon
     public Coupon updateCoupon(Coupon coupon) {
-        return couponRepository.save(coupon);
+        Coupon saved = couponRepository.save(coupon);
+        couponIndex.evictAll();
+        couponIndex.put(saved);
+        return saved;
     }
 
     // Xóa coupon
     public void deleteCoupon(String id) {
         couponRepository.deleteById(id);
+        couponIndex.evictAll();
     }
 }
\ No newline at end of file
@@ -0,0 +1,279 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
+import com.example.ecommerceproject.model.DailyCategorySales;
+import com.example.ecommerceproject.model.DailySales;
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderStatus;
+import com.example.ecommerceproject.repository.DailySalesRepository;
+import com.example.ecommerceproject.repository.OrderRepository;
+import com.mongodb.client.result.DeleteResult;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Quản lý collection daily_sales: cập nhật lại ngày bị ảnh hưởng mỗi khi đơn hàng
+ * đổi trạng thái và cho phép dựng lại toàn bộ từ collection orders.
+ * - Ngày bị ảnh hưởng được gom lại và tính lại trên một luồng nền, luồng xử lý đơn hàng không phải chờ aggregation
+ * - Mỗi bản ghi có version: chỉ ghi đè khi version chưa đổi kể từ lúc đọc (trước khi aggregate),
+ *   nên kết quả tính từ dữ liệu cũ không thể ghi đè kết quả mới hơn
+ * - Ngày tính lỗi và vài ngày gần nhất được kiểm tra lại định kỳ; cache thống kê của ngày được xóa sau khi ghi
+ */
+@Service
+public class DailySalesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DailySalesService.class);
+
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    private final DailySalesRepository dailySalesRepository;
+    private final SalesAggregationService salesAggregationService;
+    private final ProductCategoryResolver productCategoryResolver;
+    private final OrderRepository orderRepository;
+    private final MongoTemplate mongoTemplate;
+    private final StatisticsCache statisticsCache;
+    private final int recheckDays;
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("daily-sales-writer").factory());
+
+    // Ngày đang chờ tính lại và ngày tính lỗi (thử lại ở lần kiểm tra định kỳ)
+    private final Set<LocalDate> pendingDays = ConcurrentHashMap.newKeySet();
+    private final Set<LocalDate> failedDays = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    @Autowired
+    public DailySalesService(DailySalesRepository dailySalesRepository, SalesAggregationService salesAggregationService,
+                             ProductCategoryResolver productCategoryResolver, OrderRepository orderRepository,
+                             MongoTemplate mongoTemplate, StatisticsCache statisticsCache,
+                             @Value("${daily-sales.recheck-days:2}") int recheckDays) {
+        this.dailySalesRepository = dailySalesRepository;
+        this.salesAggregationService = salesAggregationService;
+        this.productCategoryResolver = productCategoryResolver;
+        this.orderRepository = orderRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.statisticsCache = statisticsCache;
+        this.recheckDays = recheckDays;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    // Chỉ những thay đổi đi vào hoặc rời khỏi DELIVERED mới làm thay đổi số liệu
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        Set<LocalDate> affectedDays = new TreeSet<>();
+        for (OrderStatusChangedEvent.Change change : event.getChanges()) {
+            Order order = change.getOrder();
+            if (change.touches(OrderStatus.DELIVERED) && order.getCreatedAt() != null) {
+                affectedDays.add(order.getCreatedAt().toLocalDate());
+            }
+        }
+        enqueue(affectedDays);
+    }
+
+    // Thử lại các ngày tính lỗi và tính lại vài ngày gần nhất (đơn mới thường rơi vào đây) phòng khi mất sự kiện
+    @Scheduled(initialDelayString = "${daily-sales.recheck-ms:900000}", fixedDelayString = "${daily-sales.recheck-ms:900000}")
+    public void recheck() {
+        Set<LocalDate> days = new TreeSet<>(failedDays);
+        failedDays.removeAll(days);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < recheckDays; i++) {
+            days.add(today.minusDays(i));
+        }
+        enqueue(days);
+    }
+
+    // Dựng lại rollup khi collection còn trống (lần chạy đầu tiên sau khi triển khai)
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeRollup() {
+        try {
+            if (dailySalesRepository.count() == 0 && orderRepository.count() > 0) {
+                logger.info("daily_sales đang trống, dựng lại từ collection orders");
+                rebuildAll();
+            }
+        } catch (Exception e) {
+            logger.error("Không thể khởi tạo daily_sales", e);
+        }
+    }
+
+    private void enqueue(Set<LocalDate> days) {
+        if (days.isEmpty()) {
+            return;
+        }
+        pendingDays.addAll(days);
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Đang tắt ứng dụng
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    // Chạy trên luồng nền; ngày đến trong lúc chạy được xử lý ở lần drain kế tiếp
+    private void drain() {
+        drainScheduled.set(false);
+        Set<LocalDate> days = new TreeSet<>();
+        for (Iterator<LocalDate> iterator = pendingDays.iterator(); iterator.hasNext(); ) {
+            days.add(iterator.next());
+            iterator.remove();
+        }
+
+        for (LocalDate day : days) {
+            try {
+                refreshDay(day);
+                statisticsCache.evictCovering(day);
+            } catch (Exception e) {
+                failedDays.add(day);
+                logger.error("Không thể cập nhật daily_sales cho ngày {}, sẽ thử lại ở lần kiểm tra định kỳ", day, e);
+            }
+        }
+    }
+
+    /**
+     * Tính lại bản ghi của một ngày từ các đơn hàng tạo trong ngày đó.
+     * Ngày không còn đơn DELIVERED vẫn được ghi với số liệu 0 để version tiếp tục chặn các lần ghi cũ hơn.
+     */
+    public DailySales refreshDay(LocalDate day) {
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = day.plusDays(1).atStartOfDay();
+
+        for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+            DailySales current = dailySalesRepository.findById(day.toString()).orElse(null);
+            DailySales dailySales = buildRollup(from, to).getOrDefault(day, new DailySales(day));
+            if (writeIfUnchanged(dailySales, current != null ? current.getVersion() : null)) {
+                return dailySales;
+            }
+            logger.debug("daily_sales {} thay đổi trong lúc tính lại, thử lại lần {}", day, attempt + 1);
+        }
+        throw new IllegalStateException("daily_sales " + day + " liên tục thay đổi, bỏ qua lần tính lại này");
+    }
+
+    /**
+     * Dựng lại toàn bộ daily_sales từ collection orders mà không xóa trắng collection:
+     * ghi đè từng ngày (có điều kiện version) rồi xóa các ngày không còn doanh số
+     * @return số ngày có doanh số
+     */
+    public int rebuildAll() {
+        Map<String, Long> versions = new HashMap<>();
+        Query existing = new Query();
+        existing.fields().include("_id").include("version");
+        mongoTemplate.find(existing, DailySales.class).forEach(row -> versions.put(row.getId(), row.getVersion()));
+
+        Map<LocalDate, DailySales> rollup = buildRollup(null, null);
+        Set<LocalDate> changedMeanwhile = new TreeSet<>();
+        rollup.forEach((day, dailySales) -> {
+            if (!writeIfUnchanged(dailySales, versions.remove(dailySales.getId()))) {
+                changedMeanwhile.add(day);
+            }
+        });
+
+        // Ngày còn lại trong versions không còn đơn DELIVERED nào
+        versions.forEach((id, version) -> {
+            DeleteResult result = mongoTemplate.remove(versionedQuery(id, version), DailySales.class);
+            if (result.getDeletedCount() == 0) {
+                changedMeanwhile.add(LocalDate.parse(id));
+            }
+        });
+
+        // Ngày được ghi bởi luồng khác trong lúc dựng lại: tính lại riêng để chắc chắn dùng dữ liệu mới nhất
+        enqueue(changedMeanwhile);
+        logger.info("Đã dựng lại daily_sales: {} ngày", rollup.size());
+        return rollup.size();
+    }
+
+    /**
+     * Ghi bản ghi nếu version trong DB vẫn là expectedVersion (null: chưa có bản ghi), tăng version lên 1
+     * @return false nếu bản ghi đã bị ghi bởi luồng khác kể từ lúc đọc
+     */
+    private boolean writeIfUnchanged(DailySales dailySales, Long expectedVersion) {
+        if (expectedVersion == null) {
+            dailySales.setVersion(1);
+            try {
+                mongoTemplate.insert(dailySales);
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        dailySales.setVersion(expectedVersion + 1);
+        return mongoTemplate.replace(versionedQuery(dailySales.getId(), expectedVersion), dailySales).getMatchedCount() > 0;
+    }
+
+    // Bản ghi tạo trước khi có trường version được đọc ra với version = 0
+    private Query versionedQuery(String id, long version) {
+        Criteria versionCriteria = version == 0
+                ? Criteria.where("version").in(0L, null)
+                : Criteria.where("version").is(version);
+        return new Query(Criteria.where("_id").is(id).andOperator(versionCriteria));
+    }
+
+    // Tổng theo ngày và theo sản phẩm đều được tính bằng aggregation, ở đây chỉ ghép danh mục vào
+    private Map<LocalDate, DailySales> buildRollup(LocalDateTime from, LocalDateTime toExclusive) {
+        Map<LocalDate, DailySales> rollup = salesAggregationService.aggregateDeliveredSalesByDay(from, toExclusive);
+        Map<LocalDate, Map<String, DailyCategorySales>> categoriesByDay = new HashMap<>();
+
+        List<SalesAggregationService.ProductDailySales> productSales =
+                salesAggregationService.aggregateDeliveredProductSalesByDay(from, toExclusive);
+        Map<String, String> categoryNames = productCategoryResolver.resolveCategoryNames(
+                productSales.stream().map(SalesAggregationService.ProductDailySales::getProductId).toList());
+
+        for (SalesAggregationService.ProductDailySales row : productSales) {
+            String category = categoryNames.getOrDefault(row.getProductId(), ProductCategoryResolver.UNKNOWN_CATEGORY);
+            DailyCategorySales categorySales = categoriesByDay
+                    .computeIfAbsent(row.getDay(), d -> new LinkedHashMap<>())
+                    .computeIfAbsent(category, name -> new DailyCategorySales(name, 0, 0, 0, 0));
+
+            categorySales.setQuantitySold(categorySales.getQuantitySold() + row.getQuantitySold());
+            categorySales.setRevenue(categorySales.getRevenue() + row.getRevenue());
+            categorySales.setProfit(categorySales.getProfit() + row.getRevenue() - row.getCost());
+        }
+
+        // Số đơn theo danh mục cần đếm đơn khác nhau (một đơn có thể có nhiều sản phẩm cùng danh mục)
+        Map<String, Integer> categoryOrders = productSales.isEmpty()
+                ? Map.of()
+                : salesAggregationService.countDeliveredOrdersByDayAndCategory(from, toExclusive,
+                        ProductCategoryResolver.UNKNOWN_CATEGORY);
+
+        LocalDateTime now = LocalDateTime.now();
+        rollup.forEach((day, dailySales) -> {
+            Map<String, DailyCategorySales> categories = categoriesByDay.getOrDefault(day, Map.of());
+            categories.forEach((name, categorySales) ->
+                    categorySales.setOrderCount(categoryOrders.getOrDefault(day + "|" + name, 0)));
+
+            dailySales.setCategories(new ArrayList<>(categories.values()));
+            dailySales.setUpdatedAt(now);
+        });
+        return rollup;
+    }
+}
@@ -39,15 +39,20 @@ public class FacadeService {
         if (product == null) {
             return new ApiResponse<>(ApiStatus.NOT_FOUND.getCode(), "Product not found", null);
         }
-        if (product.getQuantity() < cartItem.getQuantity()) {
+
+        // 3. Giảm số lượng sản phẩm trong kho (chỉ thành công nếu còn đủ hàng)
+        if (!productService.decreaseQuantity(cartItem.getProductId(), cartItem.getQuantity())) {
             return new ApiResponse<>(ApiStatus.INVALID_TOKEN.getCode(), "Not enough quantity", null);
         }
 
-        // 3. Thêm sản phẩm vào giỏ hàng
-        Cart cart = cartService.addItemToCart(userId, cartItem);
-
-        // 4. Giảm số lượng sản phẩm trong kho
-        productService.decreaseQuantity(cartItem.getProductId(), cartItem.getQuantity());
+        // 4. Thêm sản phẩm vào giỏ hàng, hoàn lại kho nếu thất bại
+        Cart cart;
+        try {
+            cart = cartService.addItemToCart(userId, cartItem);
+        } catch (RuntimeException e) {
+            productService.increaseQuantity(cartItem.getProductId(), cartItem.getQuantity());
+            throw e;
+        }
 
         return new ApiResponse<>(ApiStatus.SUCCESS.getCode(), "Item added to cart successfully!", cart);
     }
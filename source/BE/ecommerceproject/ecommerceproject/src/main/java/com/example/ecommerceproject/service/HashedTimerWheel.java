@@ -0,0 +1,90 @@
+package com.example.ecommerceproject.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timer wheel: mỗi khóa được đặt vào ô (deadline / tick) % số ô.
+ * - Thêm/hủy một hẹn giờ là O(1), mỗi tick chỉ duyệt một ô nên giữ được hàng triệu hẹn giờ với chi phí thấp
+ * - Khóa có deadline xa hơn một vòng bánh xe vẫn nằm trong ô và chỉ hết hạn khi đến đúng tick của nó
+ * - Độ chính xác bằng một tick; thread-safe bằng synchronized
+ */
+public class HashedTimerWheel<K> {
+
+    private final long tickMs;
+    private final int mask;
+    private final List<Map<K, Long>> buckets;      // ô -> (khóa -> tick hết hạn)
+    private final Map<K, Integer> bucketIndex = new HashMap<>();
+    private long currentTick;
+
+    /**
+     * @param wheelSize số ô, được làm tròn lên lũy thừa của 2
+     */
+    public HashedTimerWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new HashMap<>());
+        }
+        this.currentTick = startMs / tickMs;
+    }
+
+    /**
+     * Hẹn giờ cho khóa (thay thế hẹn giờ cũ nếu có); deadline đã qua sẽ hết hạn ở tick kế tiếp
+     */
+    public synchronized void schedule(K key, long deadlineMs) {
+        cancel(key);
+        long deadlineTick = Math.max(deadlineMs / tickMs, currentTick + 1);
+        int index = (int) (deadlineTick & mask);
+        buckets.get(index).put(key, deadlineTick);
+        bucketIndex.put(key, index);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Integer index = bucketIndex.remove(key);
+        if (index == null) {
+            return false;
+        }
+        buckets.get(index).remove(key);
+        return true;
+    }
+
+    /**
+     * Tiến bánh xe tới thời điểm nowMs và trả về các khóa đã hết hạn (đã bị xóa khỏi bánh xe)
+     */
+    public synchronized List<K> advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        List<K> expired = new ArrayList<>();
+        if (targetTick <= currentTick) {
+            return expired;
+        }
+
+        // Bỏ lỡ hơn một vòng (ví dụ máy bị treo) thì chỉ cần duyệt mỗi ô một lần
+        long firstTick = Math.max(currentTick + 1, targetTick - mask);
+        for (long tick = firstTick; tick <= targetTick; tick++) {
+            Iterator<Map.Entry<K, Long>> iterator = buckets.get((int) (tick & mask)).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Long> entry = iterator.next();
+                if (entry.getValue() <= targetTick) {
+                    expired.add(entry.getKey());
+                    bucketIndex.remove(entry.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+        currentTick = targetTick;
+        return expired;
+    }
+
+    public synchronized int size() {
+        return bucketIndex.size();
+    }
+}
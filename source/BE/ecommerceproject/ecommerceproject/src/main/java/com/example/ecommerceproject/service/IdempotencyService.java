@@ -0,0 +1,170 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.exception.ApiStatus;
+import com.example.ecommerceproject.model.IdempotencyRecord;
+import com.example.ecommerceproject.response.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Xử lý header Idempotency-Key cho các endpoint tạo đơn/thanh toán.
+ * - Lần đầu: ghi bản ghi IN_PROGRESS vào idempotency_keys, chạy request rồi lưu lại response
+ * - Request trùng key trên cùng instance chờ ở striped lock rồi nhận lại response đã lưu thay vì chạy lại
+ * - Request trùng key khi bản ghi vẫn IN_PROGRESS (instance khác đang xử lý) nhận 409
+ * - Bản ghi IN_PROGRESS quá thời hạn lease (tiến trình chết giữa chừng) được request thử lại tiếp quản
+ * - Response lỗi 5xx không được lưu để client có thể thử lại
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ReentrantLock[] locks;
+    private final long leaseMillis;
+
+    @Autowired
+    public IdempotencyService(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                              @Value("${idempotency.lock-stripes:256}") int lockStripes,
+                              @Value("${idempotency.in-progress-lease-ms:120000}") long leaseMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.leaseMillis = leaseMillis;
+        this.locks = new ReentrantLock[Math.max(lockStripes, 1)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param scope       endpoint được bảo vệ, ví dụ "orders/{orderId}/pay"
+     * @param key         giá trị header Idempotency-Key; null hoặc rỗng thì chạy action như bình thường
+     * @param requestBody nội dung request, dùng để từ chối việc dùng lại key cho một request khác
+     */
+    public ResponseEntity<ApiResponse<?>> execute(String scope, String key, Object requestBody,
+                                                  Supplier<ResponseEntity<ApiResponse<?>>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+
+        String id = scope + ":" + key;
+        int requestHash = requestBody != null ? requestBody.hashCode() : 0;
+        ReentrantLock lock = locks[Math.floorMod(id.hashCode(), locks.length)];
+
+        lock.lock();
+        try {
+            IdempotencyRecord existing = mongoTemplate.findById(id, IdempotencyRecord.class);
+            if (existing != null && !takeOverStale(existing, requestHash)) {
+                return replay(existing, requestHash);
+            }
+
+            if (existing == null) {
+                try {
+                    mongoTemplate.insert(new IdempotencyRecord(id, requestHash));
+                } catch (DuplicateKeyException e) {
+                    // Instance khác vừa nhận cùng key
+                    return conflict("Request with this Idempotency-Key is still being processed");
+                }
+            }
+
+            ResponseEntity<ApiResponse<?>> response;
+            try {
+                response = action.get();
+            } catch (RuntimeException e) {
+                mongoTemplate.remove(byId(id), IdempotencyRecord.class);
+                throw e;
+            }
+
+            store(id, response);
+            return response;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Tiếp quản bản ghi IN_PROGRESS đã quá lease; điều kiện trên startedAt cũ đảm bảo chỉ một request thắng
+    private boolean takeOverStale(IdempotencyRecord existing, int requestHash) {
+        if (existing.getStatus() != IdempotencyRecord.Status.IN_PROGRESS || existing.getRequestHash() != requestHash) {
+            return false;
+        }
+        LocalDateTime startedAt = existing.getStartedAt() != null ? existing.getStartedAt() : existing.getCreatedAt();
+        if (startedAt != null && startedAt.isAfter(LocalDateTime.now().minus(leaseMillis, ChronoUnit.MILLIS))) {
+            return false;
+        }
+
+        Query query = new Query(Criteria.where("_id").is(existing.getId())
+                .and("status").is(IdempotencyRecord.Status.IN_PROGRESS)
+                .and("startedAt").is(existing.getStartedAt()));
+        boolean taken = mongoTemplate.updateFirst(query, new Update().set("startedAt", LocalDateTime.now()),
+                IdempotencyRecord.class).getModifiedCount() > 0;
+        if (taken) {
+            logger.warn("Taking over stale in-progress idempotency key {} started at {}", existing.getId(), startedAt);
+        }
+        return taken;
+    }
+
+    private ResponseEntity<ApiResponse<?>> replay(IdempotencyRecord existing, int requestHash) {
+        if (existing.getRequestHash() != requestHash) {
+            return ResponseEntity.unprocessableEntity().body(new ApiResponse<>(ApiStatus.BAD_REQUEST.getCode(),
+                    "Idempotency-Key was already used with a different request", null));
+        }
+        if (existing.getStatus() != IdempotencyRecord.Status.COMPLETED) {
+            return conflict("Request with this Idempotency-Key is still being processed");
+        }
+
+        try {
+            ApiResponse<?> body = objectMapper.readValue(existing.getResponseBody(), ApiResponse.class);
+            return ResponseEntity.status(existing.getHttpStatus()).body(body);
+        } catch (Exception e) {
+            logger.error("Cannot read stored response for idempotency key {}", existing.getId(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ApiResponse<>(
+                    ApiStatus.SERVER_ERROR.getCode(), "Cannot read stored response", null));
+        }
+    }
+
+    private void store(String id, ResponseEntity<ApiResponse<?>> response) {
+        try {
+            if (response.getStatusCode().is5xxServerError()) {
+                mongoTemplate.remove(byId(id), IdempotencyRecord.class);
+                return;
+            }
+
+            Update update = new Update()
+                    .set("status", IdempotencyRecord.Status.COMPLETED)
+                    .set("httpStatus", response.getStatusCode().value())
+                    .set("responseBody", objectMapper.writeValueAsString(response.getBody()));
+            mongoTemplate.updateFirst(byId(id), update, IdempotencyRecord.class);
+        } catch (Exception e) {
+            // Không lưu được thì xóa bản ghi để lần thử lại không bị kẹt ở IN_PROGRESS
+            logger.error("Cannot store response for idempotency key {}", id, e);
+            mongoTemplate.remove(byId(id), IdempotencyRecord.class);
+        }
+    }
+
+    private ResponseEntity<ApiResponse<?>> conflict(String message) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(new ApiResponse<>(ApiStatus.CONFLICT.getCode(), message, null));
+    }
+
+    private Query byId(String id) {
+        return new Query(Criteria.where("_id").is(id));
+    }
+}
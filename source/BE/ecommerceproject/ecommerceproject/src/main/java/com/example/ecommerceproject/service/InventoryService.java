@@ -0,0 +1,179 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.event.ProductsChangedEvent;
+import com.example.ecommerceproject.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cập nhật tồn kho bằng các lệnh $inc có điều kiện trên MongoDB thay cho đọc - sửa - ghi.
+ * - Trừ kho chỉ thành công khi quantity >= số lượng cần trừ, nên không bán vượt tồn kho khi có nhiều đơn đồng thời
+ * - Đơn nhiều sản phẩm được trừ từng dòng (không upsert); nếu một dòng thiếu hàng thì hoàn lại các dòng đã trừ
+ */
+@Service
+public class InventoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public InventoryService(MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public record StockLine(String productId, int quantity) {
+    }
+
+    /**
+     * Trừ tồn kho của một sản phẩm (không tính là đã bán), trả về false nếu không đủ hàng hoặc không có sản phẩm
+     */
+    public boolean tryDecrease(String productId, int quantity) {
+        Product updated = mongoTemplate.findAndModify(
+                guardedQuery(productId, quantity),
+                new Update().inc("quantity", -quantity),
+                FindAndModifyOptions.options().returnNew(true),
+                Product.class);
+        if (updated == null) {
+            return false;
+        }
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.of(productId)));
+        return true;
+    }
+
+    public void increase(String productId, int quantity) {
+        mongoTemplate.updateFirst(byId(productId), new Update().inc("quantity", quantity), Product.class);
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.of(productId)));
+    }
+
+    /**
+     * Trừ kho và tăng soldCount cho tất cả dòng của một đơn hàng.
+     * Ném IllegalArgumentException nếu một sản phẩm không đủ hàng hoặc không tồn tại; khi đó không dòng nào bị trừ.
+     */
+    public void reserveForOrder(Collection<StockLine> lines) {
+        List<StockLine> merged = merge(lines);
+        if (merged.isEmpty()) {
+            return;
+        }
+
+        // Mỗi dòng là một lệnh $inc có điều kiện; dòng đầu tiên không khớp thì hoàn lại các dòng đã trừ trước đó
+        List<StockLine> applied = new ArrayList<>();
+        for (StockLine line : merged) {
+            boolean matched;
+            try {
+                matched = mongoTemplate.updateFirst(
+                        guardedQuery(line.productId(), line.quantity()),
+                        saleUpdate(line.quantity()),
+                        Product.class).getMatchedCount() > 0;
+            } catch (RuntimeException e) {
+                compensate(applied);
+                publishChanged(applied);
+                throw new IllegalStateException("Could not update stock for product: " + line.productId(), e);
+            }
+
+            if (!matched) {
+                compensate(applied);
+                publishChanged(applied);
+                // Chỉ khi thất bại mới kiểm tra để phân biệt sản phẩm không tồn tại với thiếu hàng
+                if (!mongoTemplate.exists(byId(line.productId()), Product.class)) {
+                    throw new IllegalArgumentException("Product not found in catalog: " + line.productId());
+                }
+                throw new IllegalArgumentException("Not enough stock for product: " + line.productId());
+            }
+            applied.add(line);
+        }
+        publishChanged(merged);
+    }
+
+    /**
+     * Hoàn lại tồn kho và soldCount đã trừ bởi reserveForOrder (ví dụ khi lưu đơn hàng thất bại)
+     */
+    public void releaseForOrder(Collection<StockLine> lines) {
+        List<StockLine> merged = merge(lines);
+        compensate(merged);
+        publishChanged(merged);
+    }
+
+    /**
+     * Giống releaseForOrder nhưng ném lỗi nếu lệnh hoàn kho thất bại, để nơi gọi giữ lại dấu vết và thử lại sau
+     */
+    public void releaseOrThrow(Collection<StockLine> lines) {
+        List<StockLine> merged = merge(lines);
+        if (merged.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (StockLine line : merged) {
+            bulk.updateOne(byId(line.productId()), saleUpdate(-line.quantity()));
+        }
+        bulk.execute();
+        publishChanged(merged);
+    }
+
+    // Báo cho các bản sao trong bộ nhớ (ProductCatalog) đọc lại tồn kho/soldCount mới
+    private void publishChanged(List<StockLine> lines) {
+        if (!lines.isEmpty()) {
+            eventPublisher.publishEvent(new ProductsChangedEvent(lines.stream().map(StockLine::productId).toList()));
+        }
+    }
+
+    private void compensate(List<StockLine> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (StockLine line : lines) {
+            bulk.updateOne(byId(line.productId()), saleUpdate(-line.quantity()));
+        }
+
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            logger.error("Không thể hoàn lại tồn kho cho {} sản phẩm: {}", lines.size(), lines, e);
+        }
+    }
+
+    // Gộp các dòng cùng sản phẩm để mỗi sản phẩm chỉ có một điều kiện quantity >= tổng số lượng
+    private List<StockLine> merge(Collection<StockLine> lines) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (StockLine line : lines) {
+            if (line.quantity() <= 0) {
+                throw new IllegalArgumentException("Invalid quantity for product: " + line.productId());
+            }
+            quantities.merge(line.productId(), line.quantity(), Integer::sum);
+        }
+
+        List<StockLine> merged = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> merged.add(new StockLine(productId, quantity)));
+        return merged;
+    }
+
+    private Query guardedQuery(String productId, int quantity) {
+        return new Query(Criteria.where("_id").is(productId).and("quantity").gte(quantity));
+    }
+
+    private Query byId(String productId) {
+        return new Query(Criteria.where("_id").is(productId));
+    }
+
+    private Update saleUpdate(int quantity) {
+        return new Update().inc("quantity", -quantity).inc("soldCount", quantity);
+    }
+}
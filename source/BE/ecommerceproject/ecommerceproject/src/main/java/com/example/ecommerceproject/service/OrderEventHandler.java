@@ -0,0 +1,94 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderEvent;
+import com.example.ecommerceproject.model.User;
+import com.example.ecommerceproject.repository.OrderRepository;
+import com.example.ecommerceproject.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thực thi từng loại tác vụ phụ của đơn hàng. Lỗi được ném ra để OrderEventWorker thử lại.
+ */
+@Component
+public class OrderEventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventHandler.class);
+
+    private final OrderRepository orderRepository;
+    private final UserRepository userRepository;
+    private final EmailService emailService;
+    private final CartService cartService;
+    private final UserService userService;
+
+    @Autowired
+    public OrderEventHandler(OrderRepository orderRepository, UserRepository userRepository,
+                             EmailService emailService, CartService cartService, UserService userService) {
+        this.orderRepository = orderRepository;
+        this.userRepository = userRepository;
+        this.emailService = emailService;
+        this.cartService = cartService;
+        this.userService = userService;
+    }
+
+    public void handle(OrderEvent event) {
+        switch (event.getType()) {
+            case ORDER_CONFIRMATION_EMAIL -> sendOrderConfirmationEmail(event);
+            case CART_CLEANUP -> {
+                cartService.removeItemsFromCart(event.getUserId(), event.getProductIds());
+                logger.info("Removed {} items from cart for user: {} after order {}",
+                        event.getProductIds().size(), event.getUserId(), event.getOrderId());
+            }
+            case LOYALTY_ACCRUAL -> userService.addLoyaltyPoints(event.getUserId(), event.getAmount(),
+                    event.getOrderId(), event.getId());
+        }
+    }
+
+    /**
+     * Gửi email xác nhận đơn hàng, đọc lại đơn hàng để email có giảm giá (coupon) mới nhất
+     */
+    private void sendOrderConfirmationEmail(OrderEvent event) {
+        Order order = orderRepository.findById(event.getOrderId()).orElse(null);
+        if (order == null) {
+            logger.warn("Order {} no longer exists, skipping confirmation email", event.getOrderId());
+            return;
+        }
+
+        // Lấy thông tin user để lấy email
+        User user = userRepository.findById(order.getUserId())
+                .orElse(null);
+
+        if (user != null && user.getEmail() != null) {
+            // Chuẩn bị thông tin cho email
+            Map<String, Object> emailData = new HashMap<>();
+            emailData.put("to", user.getEmail());
+            emailData.put("customerName", user.getName() != null ? user.getName() : user.getUsername());
+            emailData.put("orderId", order.getId());
+            emailData.put("totalAmount", order.getTotalAmount());
+            emailData.put("orderItems", order.getItems());
+            emailData.put("paymentMethod", order.getPaymentMethod());
+            emailData.put("shippingAddress", order.getShippingAddress());
+
+            // Thêm thông tin coupon nếu có
+            if (order.getCouponCode() != null && !order.getCouponCode().isEmpty()) {
+                emailData.put("couponCode", order.getCouponCode());
+                emailData.put("couponDiscount", order.getCouponDiscount());
+                emailData.put("finalAmount", order.getFinalAmount());
+                emailData.put("hasCoupon", true);
+            } else {
+                emailData.put("hasCoupon", false);
+            }
+
+            // Gửi email
+            emailService.sendOrderConfirmationEmail(emailData);
+        } else {
+            logger.warn("User email not found for order: {}", order.getId());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.OrderEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Xử lý các tác vụ trong outbox order_events.
+ * - Mỗi userId luôn vào cùng một luồng (stripe) nên các tác vụ của một người dùng chạy theo thứ tự ghi
+ * - Tác vụ được nhận bằng findAndModify (PENDING -> PROCESSING có hạn khóa) nên chỉ một nơi xử lý một tác vụ
+ * - Lỗi thì thử lại với thời gian chờ tăng dần; quá số lần cho phép thì chuyển FAILED
+ * - Định kỳ quét lại các tác vụ đến hạn hoặc bị kẹt (ví dụ ứng dụng tắt giữa chừng)
+ */
+@Component
+public class OrderEventWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderEventWorker.class);
+
+    private static final int POLL_BATCH_SIZE = 100;
+    private static final long LOCK_SECONDS = 60;
+
+    private final MongoTemplate mongoTemplate;
+    private final OrderEventHandler orderEventHandler;
+    private final ExecutorService[] stripes;
+    private final int maxAttempts;
+    private final long retryBaseMs;
+
+    @Autowired
+    public OrderEventWorker(MongoTemplate mongoTemplate,
+                            OrderEventHandler orderEventHandler,
+                            @Value("${orders.outbox.workers:4}") int workers,
+                            @Value("${orders.outbox.max-attempts:5}") int maxAttempts,
+                            @Value("${orders.outbox.retry-base-ms:2000}") long retryBaseMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.orderEventHandler = orderEventHandler;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseMs = retryBaseMs;
+        this.stripes = new ExecutorService[Math.max(workers, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("order-events-" + i).factory());
+        }
+    }
+
+    // Đưa tác vụ vừa ghi vào hàng đợi ngay, không chờ lần quét tiếp theo
+    public void dispatch(OrderEvent event) {
+        submit(event.getUserId(), () -> {
+            OrderEvent claimed = claim(event.getId());
+            if (claimed != null) {
+                process(claimed);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${orders.outbox.poll-interval-ms:5000}")
+    public void pollDueEvents() {
+        try {
+            Query query = new Query(dueCriteria(LocalDateTime.now()))
+                    .with(Sort.by("createdAt"))
+                    .limit(POLL_BATCH_SIZE);
+            query.fields().include("_id");
+
+            for (OrderEvent due : mongoTemplate.find(query, OrderEvent.class)) {
+                OrderEvent claimed = claim(due.getId());
+                if (claimed != null) {
+                    submit(claimed.getUserId(), () -> process(claimed));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Không thể quét order_events", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+
+    private void submit(String userId, Runnable task) {
+        int index = Math.floorMod(userId != null ? userId.hashCode() : 0, stripes.length);
+        try {
+            stripes[index].execute(task);
+        } catch (RejectedExecutionException e) {
+            // Đang tắt ứng dụng: tác vụ vẫn nằm trong order_events và được xử lý ở lần khởi động sau
+            logger.warn("Order event worker is shutting down, task for user {} deferred", userId);
+        }
+    }
+
+    private OrderEvent claim(String eventId) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(new Criteria().andOperator(Criteria.where("_id").is(eventId), dueCriteria(now)));
+        Update update = new Update()
+                .set("status", OrderEvent.Status.PROCESSING)
+                .set("lockedUntil", now.plusSeconds(LOCK_SECONDS));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), OrderEvent.class);
+    }
+
+    private void process(OrderEvent event) {
+        try {
+            orderEventHandler.handle(event);
+            mongoTemplate.updateFirst(byId(event.getId()), new Update()
+                    .set("status", OrderEvent.Status.DONE)
+                    .set("processedAt", LocalDateTime.now())
+                    .unset("lockedUntil"), OrderEvent.class);
+        } catch (Exception e) {
+            int attempts = event.getAttempts() + 1;
+            boolean exhausted = attempts >= maxAttempts;
+            Update update = new Update()
+                    .set("attempts", attempts)
+                    .set("lastError", String.valueOf(e.getMessage()))
+                    .unset("lockedUntil");
+
+            if (exhausted) {
+                update.set("status", OrderEvent.Status.FAILED);
+                logger.error("Order event {} failed after {} attempts", event.getId(), attempts, e);
+            } else {
+                long delayMs = retryBaseMs * (1L << (attempts - 1));
+                update.set("status", OrderEvent.Status.PENDING)
+                        .set("nextAttemptAt", LocalDateTime.now().plusNanos(delayMs * 1_000_000));
+                logger.warn("Order event {} failed (attempt {}), retrying in {} ms: {}",
+                        event.getId(), attempts, delayMs, e.getMessage());
+            }
+            mongoTemplate.updateFirst(byId(event.getId()), update, OrderEvent.class);
+        }
+    }
+
+    // Tác vụ PENDING đã đến hạn, hoặc PROCESSING nhưng đã quá hạn khóa
+    private Criteria dueCriteria(LocalDateTime now) {
+        return new Criteria().orOperator(
+                Criteria.where("status").is(OrderEvent.Status.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(OrderEvent.Status.PROCESSING).and("lockedUntil").lt(now));
+    }
+
+    private Query byId(String eventId) {
+        return new Query(Criteria.where("_id").is(eventId));
+    }
+}
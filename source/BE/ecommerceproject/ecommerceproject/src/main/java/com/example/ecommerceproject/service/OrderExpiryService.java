@@ -0,0 +1,220 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderItem;
+import com.example.ecommerceproject.model.OrderStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Tự động hủy các đơn PENDING chưa thanh toán (trừ COD) sau một khoảng thời gian.
+ * - Hẹn giờ được giữ trong HashedTimerWheel, dựng lại từ MongoDB khi khởi động và cập nhật theo OrderStatusChangedEvent
+ * - Đơn hết hạn được hủy hàng loạt qua OrderStateManager; tồn kho đã giữ được hoàn lại bằng một lệnh bulk $inc
+ * - Cờ stockReserved được tắt bằng update có điều kiện trước khi hoàn kho nên mỗi đơn chỉ được hoàn một lần;
+ *   đơn đã hủy mà chưa hoàn được kho (lỗi giữa chừng, instance dừng) được quét và hoàn lại định kỳ
+ */
+@Service
+public class OrderExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderExpiryService.class);
+
+    private static final String COD = "COD";
+    private static final int CANCEL_BATCH_SIZE = 1000;
+    private static final long RETRY_DELAY_MS = 60_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final OrderStateManager orderStateManager;
+    private final InventoryService inventoryService;
+    private final HashedTimerWheel<String> wheel;
+
+    @Value("${orders.pending-expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${orders.pending-expiry.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Autowired
+    public OrderExpiryService(MongoTemplate mongoTemplate,
+                              OrderStateManager orderStateManager,
+                              InventoryService inventoryService,
+                              @Value("${orders.pending-expiry.tick-ms:1000}") long tickMs,
+                              @Value("${orders.pending-expiry.wheel-size:4096}") int wheelSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.orderStateManager = orderStateManager;
+        this.inventoryService = inventoryService;
+        this.wheel = new HashedTimerWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    // Dựng lại bánh xe từ các đơn PENDING hiện có, chỉ đọc _id và createdAt
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildTimers() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Query query = new Query(pendingPrepaidCriteria());
+            query.fields().include("_id", "createdAt");
+
+            try (Stream<Order> orders = mongoTemplate.stream(query, Order.class)) {
+                orders.forEach(this::schedule);
+            }
+            logger.info("Scheduled expiry for {} pending orders (timeout {} minutes)", wheel.size(), timeoutMinutes);
+        } catch (Exception e) {
+            logger.error("Không thể dựng lại hẹn giờ hủy đơn PENDING", e);
+        }
+    }
+
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (OrderStatusChangedEvent.Change change : event.getChanges()) {
+            Order order = change.getOrder();
+            if (change.isCreated() && isPendingPrepaid(order)) {
+                schedule(order);
+            } else if (change.getPreviousStatus() == OrderStatus.PENDING && order.getStatus() != OrderStatus.PENDING) {
+                wheel.cancel(order.getId());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${orders.pending-expiry.tick-ms:1000}")
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        List<String> expired = wheel.advance(System.currentTimeMillis());
+        for (int from = 0; from < expired.size(); from += CANCEL_BATCH_SIZE) {
+            List<String> batch = new ArrayList<>(expired.subList(from, Math.min(from + CANCEL_BATCH_SIZE, expired.size())));
+            try {
+                expire(batch);
+            } catch (Exception e) {
+                // Hẹn giờ lại cả lô: đơn nào còn PENDING sẽ được hủy ở lần thử sau, đơn đã hủy mà còn stockReserved
+                // sẽ được hoàn kho ở lần thử sau (hoặc bởi lần quét định kỳ), đơn đã đổi sang trạng thái khác bị bỏ qua
+                logger.error("Không thể hủy {} đơn PENDING hết hạn, thử lại sau {} ms: {}", batch.size(), RETRY_DELAY_MS, batch, e);
+                long retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+                batch.forEach(orderId -> wheel.schedule(orderId, retryAt));
+            }
+        }
+    }
+
+    // Hoàn kho cho các đơn bị hủy khi chưa thanh toán mà vẫn còn stockReserved quá một phút (expire bị lỗi giữa chừng)
+    @Scheduled(initialDelayString = "${orders.pending-expiry.release-sweep-ms:300000}",
+            fixedDelayString = "${orders.pending-expiry.release-sweep-ms:300000}")
+    public void releaseStrandedStock() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Query query = new Query(unreleasedCriteria().and("updatedAt").lt(LocalDateTime.now().minusMinutes(1)))
+                    .limit(CANCEL_BATCH_SIZE);
+            query.fields().include("_id");
+            List<String> orderIds = mongoTemplate.find(query, Order.class).stream().map(Order::getId).toList();
+            if (!orderIds.isEmpty()) {
+                logger.warn("Found {} cancelled orders with unreleased stock", orderIds.size());
+                releaseStock(orderIds);
+            }
+        } catch (Exception e) {
+            logger.error("Không thể hoàn kho cho các đơn đã hủy còn stockReserved", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expire(List<String> orderIds) {
+        // Chỉ hủy đơn còn PENDING: đơn đã thanh toán sau khi hẹn giờ bật ra, hoặc trên instance khác, không bị đụng tới
+        Map<String, Object> result = orderStateManager.cancelPendingOrders(orderIds);
+        List<Order> cancelled = (List<Order>) result.get("updatedOrders");
+
+        // Hoàn kho cho cả lô chứ không chỉ các đơn vừa hủy: lần thử lại sau lỗi cần hoàn cho đơn đã hủy ở lần trước
+        int released = releaseStock(orderIds);
+        logger.info("Expired {} unpaid pending orders, released stock for {} orders", cancelled.size(), released);
+    }
+
+    /**
+     * Hoàn kho cho các đơn trong orderIds đã bị hủy khi chưa thanh toán và còn stockReserved.
+     * Tắt cờ bằng findAndModify có điều kiện trước (mỗi đơn chỉ một instance nhận được), hoàn kho,
+     * và bật lại cờ nếu hoàn kho lỗi để lần thử sau hoặc lần quét định kỳ xử lý tiếp.
+     * @return số đơn đã được hoàn kho
+     */
+    private int releaseStock(List<String> orderIds) {
+        List<String> claimed = new ArrayList<>();
+        List<InventoryService.StockLine> lines = new ArrayList<>();
+        try {
+            for (String orderId : orderIds) {
+                Query query = new Query(unreleasedCriteria().and("_id").is(orderId));
+                query.fields().include("items");
+                Order order = mongoTemplate.findAndModify(query, new Update().set("stockReserved", false), Order.class);
+                if (order == null) {
+                    continue;
+                }
+                claimed.add(orderId);
+                for (OrderItem item : order.getItems()) {
+                    if (item.getQuantity() > 0) {
+                        lines.add(new InventoryService.StockLine(item.getProductId(), item.getQuantity()));
+                    }
+                }
+            }
+            inventoryService.releaseOrThrow(lines);
+        } catch (RuntimeException e) {
+            if (!claimed.isEmpty()) {
+                restoreStockReserved(claimed);
+            }
+            throw e;
+        }
+        return claimed.size();
+    }
+
+    private void restoreStockReserved(List<String> orderIds) {
+        try {
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(orderIds)),
+                    new Update().set("stockReserved", true), Order.class);
+        } catch (RuntimeException e) {
+            logger.error("Không thể bật lại stockReserved cho {} đơn chưa hoàn được kho, cần đối soát tay: {}",
+                    orderIds.size(), orderIds, e);
+        }
+    }
+
+    // Đơn đã hủy, còn giữ kho, và trạng thái ngay trước khi hủy là PENDING (hủy khi chưa thanh toán)
+    private Criteria unreleasedCriteria() {
+        AggregationExpression previousStatus = ArrayOperators.ArrayElemAt.arrayOf("statusHistory.status").elementAt(-2);
+        return Criteria.where("status").is(OrderStatus.CANCELLED).and("stockReserved").is(true)
+                .andOperator(Criteria.expr(ComparisonOperators.Eq.valueOf(previousStatus)
+                        .equalToValue(OrderStatus.PENDING.name())));
+    }
+
+    private void schedule(Order order) {
+        LocalDateTime createdAt = order.getCreatedAt() != null ? order.getCreatedAt() : LocalDateTime.now();
+        long deadlineMs = createdAt.plusMinutes(timeoutMinutes).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        wheel.schedule(order.getId(), deadlineMs);
+    }
+
+    private boolean isPendingPrepaid(Order order) {
+        return order.getStatus() == OrderStatus.PENDING && !COD.equals(order.getPaymentMethod());
+    }
+
+    private Criteria pendingPrepaidCriteria() {
+        return Criteria.where("status").is(OrderStatus.PENDING).and("paymentMethod").ne(COD);
+    }
+}
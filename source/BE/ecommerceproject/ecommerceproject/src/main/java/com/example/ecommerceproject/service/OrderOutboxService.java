@@ -0,0 +1,87 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderEvent;
+import com.example.ecommerceproject.model.OrderEventType;
+import com.mongodb.bulk.BulkWriteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Ghi các tác vụ phụ của đơn hàng (email, dọn giỏ hàng, cộng điểm loyalty) vào outbox order_events.
+ * Request chỉ tốn một lệnh insert; việc thực thi do OrderEventWorker đảm nhận.
+ */
+@Service
+public class OrderOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderOutboxService.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final OrderEventWorker orderEventWorker;
+
+    @Autowired
+    public OrderOutboxService(MongoTemplate mongoTemplate, OrderEventWorker orderEventWorker) {
+        this.mongoTemplate = mongoTemplate;
+        this.orderEventWorker = orderEventWorker;
+    }
+
+    public void recordConfirmationEmail(Order order) {
+        record(List.of(new OrderEvent(order, OrderEventType.ORDER_CONFIRMATION_EMAIL, null)));
+    }
+
+    public void recordCartCleanup(Order order, List<String> productIds) {
+        OrderEvent event = new OrderEvent(order, OrderEventType.CART_CLEANUP, null);
+        event.setProductIds(productIds);
+        record(List.of(event));
+    }
+
+    /**
+     * @param key phân biệt các lần cộng điểm của cùng một đơn (ví dụ trạng thái đơn lúc cộng)
+     */
+    public void recordLoyaltyAccrual(Order order, double amount, String key) {
+        OrderEvent event = new OrderEvent(order, OrderEventType.LOYALTY_ACCRUAL, key);
+        event.setAmount(amount);
+        record(List.of(event));
+    }
+
+    // Cộng điểm cho nhiều đơn (ví dụ sau khi chuyển trạng thái hàng loạt) bằng một lệnh ghi
+    public void recordLoyaltyAccruals(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        record(orders.stream().map(order -> {
+            OrderEvent event = new OrderEvent(order, OrderEventType.LOYALTY_ACCRUAL, order.getStatus().name());
+            event.setAmount(order.getFinalAmount());
+            return event;
+        }).toList());
+    }
+
+    /**
+     * Ghi các tác vụ bằng một lệnh bulk; tác vụ đã tồn tại (trùng id) được bỏ qua
+     */
+    public void record(List<OrderEvent> events) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderEvent.class);
+        bulk.insert(events);
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                logger.debug("Order event {} already recorded", events.get(error.getIndex()).getId());
+            }
+        }
+
+        events.forEach(orderEventWorker::dispatch);
+    }
+}
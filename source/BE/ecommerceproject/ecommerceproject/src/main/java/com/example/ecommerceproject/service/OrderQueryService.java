@@ -0,0 +1,202 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderStatus;
+import com.example.ecommerceproject.model.OrderSummary;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Truy vấn danh sách đơn hàng cho admin trực tiếp trên MongoDB.
+ * - Lọc theo trạng thái/khoảng ngày và sắp xếp (createdAt, _id) giảm dần, dùng index status_createdAt_id / createdAt_id
+ * - Phân trang keyset bằng cursor (createdAt, _id) nên chi phí không phụ thuộc vào trang đang xem
+ * - Vẫn hỗ trợ page/size (skip + count) cho giao diện admin hiện tại
+ * - Bản rút gọn OrderSummary chỉ đọc các trường cần cho danh sách; đơn đầy đủ chỉ tải ở trang chi tiết
+ */
+@Service
+public class OrderQueryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderQueryService.class);
+
+    public static final String VIEW_SUMMARY = "summary";
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id"));
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public OrderQueryService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Phân trang theo số trang, giữ nguyên định dạng cũ (orders, currentPage, totalPages, totalItems)
+     */
+    public Map<String, Object> findPage(String status, String startDate, String endDate, int page, int size, String view) {
+        int pageSize = normalizeSize(size);
+        int pageNumber = Math.max(page, 0);
+        Criteria criteria = filterCriteria(status, startDate, endDate);
+
+        long totalItems = mongoTemplate.count(new Query(criteria), Order.class);
+        List<?> orders = find(criteria, (long) pageNumber * pageSize, pageSize, view);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("orders", orders);
+        result.put("currentPage", pageNumber);
+        result.put("totalPages", (int) Math.ceil((double) totalItems / pageSize));
+        result.put("totalItems", totalItems);
+        return result;
+    }
+
+    /**
+     * Phân trang keyset: trả về orders, nextCursor (null nếu hết dữ liệu) và hasMore.
+     * cursor rỗng nghĩa là trang đầu tiên.
+     */
+    public Map<String, Object> findAfterCursor(String status, String startDate, String endDate, String cursor,
+                                               int size, String view) {
+        int pageSize = normalizeSize(size);
+        Criteria criteria = filterCriteria(status, startDate, endDate);
+
+        if (cursor != null && !cursor.isEmpty()) {
+            Cursor position = Cursor.decode(cursor);
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(position.createdAt()),
+                    Criteria.where("createdAt").is(position.createdAt()).and("_id").lt(position.id())));
+        }
+
+        // Lấy dư một phần tử để biết còn trang sau hay không
+        List<?> rows = find(criteria, 0, pageSize + 1, view);
+        boolean hasMore = rows.size() > pageSize;
+        List<?> orders = hasMore ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = null;
+        if (hasMore) {
+            Object last = orders.get(orders.size() - 1);
+            nextCursor = last instanceof Order order
+                    ? new Cursor(order.getCreatedAt(), order.getId()).encode()
+                    : new Cursor(((OrderSummary) last).getCreatedAt(), ((OrderSummary) last).getId()).encode();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("orders", new ArrayList<>(orders));
+        result.put("nextCursor", nextCursor);
+        result.put("hasMore", hasMore);
+        return result;
+    }
+
+    private List<?> find(Criteria criteria, long skip, int limit, String view) {
+        if (VIEW_SUMMARY.equalsIgnoreCase(view)) {
+            return findSummaries(criteria, skip, limit);
+        }
+
+        Query query = new Query(criteria).with(NEWEST_FIRST).skip(skip).limit(limit);
+        return mongoTemplate.find(query, Order.class);
+    }
+
+    /**
+     * Lịch sử đơn hàng của một người dùng dạng rút gọn, mới nhất trước (dùng index userId_createdAt)
+     */
+    public List<OrderSummary> findSummariesByUser(String userId) {
+        return findSummaries(Criteria.where("userId").is(userId), 0, 0);
+    }
+
+    // Chỉ các trường cần cho danh sách được trả về, số lượng và ảnh đầu tiên tính trên MongoDB; limit <= 0 là không giới hạn
+    private List<OrderSummary> findSummaries(Criteria criteria, long skip, int limit) {
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(criteria));
+        operations.add(Aggregation.sort(NEWEST_FIRST));
+        if (skip > 0) {
+            operations.add(Aggregation.skip(skip));
+        }
+        if (limit > 0) {
+            operations.add(Aggregation.limit(limit));
+        }
+        operations.add(Aggregation.stage(new Document("$project", new Document("userId", 1)
+                .append("status", 1)
+                .append("totalAmount", 1)
+                .append("couponDiscount", 1)
+                .append("loyaltyPointsDiscount", 1)
+                .append("paymentMethod", 1)
+                .append("createdAt", 1)
+                .append("itemCount", new Document("$sum", "$items.quantity"))
+                .append("firstProductName", new Document("$arrayElemAt", List.of("$items.productName", 0)))
+                .append("firstImageUrl", new Document("$arrayElemAt", List.of("$items.imageUrl", 0))))));
+
+        return mongoTemplate.aggregate(Aggregation.newAggregation(operations), Order.class, OrderSummary.class)
+                .getMappedResults();
+    }
+
+    private Criteria filterCriteria(String status, String startDate, String endDate) {
+        Criteria criteria = new Criteria();
+
+        if (status != null && !status.isEmpty()) {
+            try {
+                criteria.and("status").is(OrderStatus.valueOf(status));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid order status: {}", status);
+            }
+        }
+
+        LocalDateTime start = parseDateTime(startDate, "startDate");
+        LocalDateTime end = parseDateTime(endDate, "endDate");
+        if (start != null && end != null) {
+            criteria.and("createdAt").gte(start).lte(end);
+        } else if (start != null) {
+            criteria.and("createdAt").gte(start);
+        } else if (end != null) {
+            criteria.and("createdAt").lte(end);
+        }
+        return criteria;
+    }
+
+    private LocalDateTime parseDateTime(String value, String name) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (Exception e) {
+            logger.error("Error parsing {}: {}", name, value, e);
+            return null;
+        }
+    }
+
+    private int normalizeSize(int size) {
+        return size <= 0 ? 20 : Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    // Vị trí của phần tử cuối trang, mã hóa base64 url-safe để trả cho client
+    private record Cursor(LocalDateTime createdAt, String id) {
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.ecommerceproject.service;
 
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
 import com.example.ecommerceproject.model.*;
 import com.example.ecommerceproject.repository.CartRepository;
 import com.example.ecommerceproject.repository.OrderRepository;
@@ -8,7 +9,7 @@ import com.example.ecommerceproject.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,8 +21,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.stream.Collectors;
-import java.util.Optional;
 
 /**
  * Service for managing orders
@@ -54,17 +53,38 @@ public class OrderService {
     
     @Autowired
     private CouponService couponService;
+
+    @Autowired
+    private SalesAggregationService salesAggregationService;
+
+    @Autowired
+    private OrderQueryService orderQueryService;
+
+    @Autowired
+    private UserSummaryService userSummaryService;
+
+    @Autowired
+    private OrderOutboxService orderOutboxService;
     
     @Autowired
     private UserService userService;
 
     @Autowired
-    private ApplicationContext applicationContext;
+    private ApplicationEventPublisher eventPublisher;
 
     /**
      * Create a new order from cart items
      */
     public Order createOrder(String userId, Address shippingAddress, String paymentMethod, List<String> selectedItemIds) {
+        Order savedOrder = saveNewOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
+        
+        // Gửi email thông báo đơn hàng thành công (xử lý bất đồng bộ qua outbox)
+        orderOutboxService.recordConfirmationEmail(savedOrder);
+        
+        return savedOrder;
+    }
+
+    private Order saveNewOrder(String userId, Address shippingAddress, String paymentMethod, List<String> selectedItemIds) {
         if (selectedItemIds == null || selectedItemIds.isEmpty()) {
             throw new IllegalArgumentException("Không có sản phẩm nào được chọn để thanh toán");
         }
@@ -82,6 +102,7 @@ public class OrderService {
             orderItem.setQuantity(1); // Mặc định số lượng là 1, có thể điều chỉnh sau
             orderItem.setPrice(product.getPrice());
             orderItem.setImageUrl(product.getPrimaryImageUrl());
+            orderItem.setCostPrice(product.estimateCostPrice());
             
             orderItems.add(orderItem);
         }
@@ -94,10 +115,7 @@ public class OrderService {
         // Create new order
         Order order = new Order(userId, orderItems, totalAmount, OrderStatus.PENDING, paymentMethod, shippingAddress);
         Order savedOrder = orderRepository.save(order);
-        
-        // Gửi email thông báo đơn hàng thành công
-        sendOrderConfirmationEmail(savedOrder);
-        
+        eventPublisher.publishEvent(OrderStatusChangedEvent.created(savedOrder));
         return savedOrder;
     }
     
@@ -107,15 +125,16 @@ public class OrderService {
     public Order createOrderWithCoupon(String userId, Address shippingAddress, String paymentMethod, 
                                       List<String> selectedItemIds, String couponCode) {
         // First create the order normally
-        Order order = createOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
+        Order order = saveNewOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
         
         // Apply coupon if provided
         if (couponCode != null && !couponCode.isEmpty()) {
             order = applyCouponToOrder(order.getId(), couponCode);
-            // Gửi email lại sau khi áp dụng coupon
-            sendOrderConfirmationEmail(order);
         }
         
+        // Gửi email một lần sau khi áp dụng coupon
+        orderOutboxService.recordConfirmationEmail(order);
+        
         return order;
     }
     
@@ -125,15 +144,16 @@ public class OrderService {
     public Order createOrderWithLoyaltyPoints(String userId, Address shippingAddress, String paymentMethod, 
                                       List<String> selectedItemIds, int loyaltyPointsToUse) {
         // First create the order normally
-        Order order = createOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
+        Order order = saveNewOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
         
         // Apply loyalty points if provided
         if (loyaltyPointsToUse > 0) {
             order = applyLoyaltyPointsToOrder(order.getId(), loyaltyPointsToUse);
-            // Gửi email lại sau khi áp dụng loyalty points
-            sendOrderConfirmationEmail(order);
         }
         
+        // Gửi email một lần sau khi áp dụng loyalty points
+        orderOutboxService.recordConfirmationEmail(order);
+        
         return order;
     }
     
@@ -143,7 +163,7 @@ public class OrderService {
     public Order createOrderWithCouponAndLoyaltyPoints(String userId, Address shippingAddress, String paymentMethod, 
                                       List<String> selectedItemIds, String couponCode, int loyaltyPointsToUse) {
         // First create the order normally
-        Order order = createOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
+        Order order = saveNewOrder(userId, shippingAddress, paymentMethod, selectedItemIds);
         
         // Apply coupon if provided
         if (couponCode != null && !couponCode.isEmpty()) {
@@ -156,7 +176,7 @@ public class OrderService {
         }
         
         // Gửi email sau khi áp dụng tất cả giảm giá
-        sendOrderConfirmationEmail(order);
+        orderOutboxService.recordConfirmationEmail(order);
         
         return order;
     }
@@ -174,7 +194,7 @@ public class OrderService {
         
         try {
             // Calculate discount amount (1 point = 1000 VND)
-            double discountAmount = userService.useLoyaltyPoints(order.getUserId(), pointsToUse);
+            double discountAmount = userService.useLoyaltyPoints(order.getUserId(), pointsToUse, order.getId());
             
             // Apply loyalty points to order
             order.applyLoyaltyPoints(pointsToUse, discountAmount);
@@ -250,6 +270,13 @@ public class OrderService {
         return orderRepository.findByUserId(userId);
     }
 
+    /**
+     * Lịch sử đơn hàng dạng rút gọn (không có items, địa chỉ, statusHistory)
+     */
+    public List<OrderSummary> getOrderSummariesByUserId(String userId) {
+        return orderQueryService.findSummariesByUser(userId);
+    }
+
     /**
      * Process order payment
      */
@@ -261,6 +288,8 @@ public class OrderService {
             throw new IllegalArgumentException("Cannot process payment for order with status: " + order.getStatus());
         }
 
+        OrderStatus previousStatus = order.getStatus();
+
         // Process payment based on payment method
         boolean paymentSuccess = processPaymentByMethod(order.getPaymentMethod(), paymentDetails, order.getFinalAmount());
 
@@ -270,10 +299,6 @@ public class OrderService {
             // COD orders will remain in PENDING status until manually updated by staff
             if (!"COD".equals(order.getPaymentMethod())) {
                 order.updateStatus(OrderStatus.PAID);
-                
-                // Add loyalty points to user after successful payment
-                int pointsEarned = order.calculateLoyaltyPointsEarned();
-                userService.addLoyaltyPoints(order.getUserId(), order.getFinalAmount());
             } else {
                 // Với COD, chỉ cập nhật thời gian và không thay đổi trạng thái
                 logger.info("COD order {} confirmed but status remains PENDING until payment is received", order.getId());
@@ -285,7 +310,16 @@ public class OrderService {
             order.updateStatus(OrderStatus.FAILED);
         }
 
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+        if (savedOrder.getStatus() != previousStatus) {
+            eventPublisher.publishEvent(OrderStatusChangedEvent.of(savedOrder, previousStatus));
+        }
+
+        // Add loyalty points to user after successful payment (xử lý bất đồng bộ qua outbox)
+        if (savedOrder.getStatus() == OrderStatus.PAID) {
+            orderOutboxService.recordLoyaltyAccrual(savedOrder, savedOrder.getFinalAmount(), OrderStatus.PAID.name());
+        }
+        return savedOrder;
     }
 
     private boolean processPaymentByMethod(String paymentMethod, Map<String, Object> paymentDetails, double amount) {
@@ -300,25 +334,8 @@ public class OrderService {
     public List<Order> getAllOrders() {
         List<Order> orders = orderRepository.findAll();
         
-        // Thêm thông tin user (email và username) vào response
-        for (Order order : orders) {
-            try {
-                Optional<User> userOpt = userRepository.findById(order.getUserId());
-                if (userOpt.isPresent()) {
-                    User user = userOpt.get();
-                    
-                    // Thêm thông tin dưới dạng thuộc tính bổ sung vào order
-                    Map<String, Object> additionalInfo = new HashMap<>();
-                    additionalInfo.put("userEmail", user.getEmail());
-                    additionalInfo.put("username", user.getUsername());
-                    
-                    // Lưu vào order (giả định đã có phương thức setAdditionalInfo trong Order)
-                    order.setAdditionalInfo(additionalInfo);
-                }
-            } catch (Exception e) {
-                logger.error("Error fetching user info for order: {}", order.getId(), e);
-            }
-        }
+        // Thêm thông tin user (email và username) vào response, lấy một lần cho tất cả userId
+        userSummaryService.enrichOrders(orders);
         
         // Sắp xếp đơn hàng theo thời gian tạo giảm dần (mới nhất trước)
         orders.sort((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()));
@@ -337,81 +354,31 @@ public class OrderService {
      * @return Map containing orders and pagination info
      */
     public Map<String, Object> getFilteredOrders(String status, String startDate, String endDate, int page, int size) {
-        // Lấy tất cả đơn hàng trước (để tương thích với cách triển khai cũ)
-        List<Order> allOrders = getAllOrders();
-        List<Order> filteredOrders = new ArrayList<>(allOrders);
-        
-        // Log thông tin bộ lọc cho debug
-        logger.info("Filtering orders - status: {}, startDate: {}, endDate: {}, page: {}, size: {}", 
-                    status, startDate, endDate, page, size);
-        
-        // Lọc theo trạng thái nếu được chỉ định
-        if (status != null && !status.isEmpty()) {
-            try {
-                OrderStatus orderStatus = OrderStatus.valueOf(status);
-                filteredOrders = filteredOrders.stream()
-                                            .filter(order -> order.getStatus() == orderStatus)
-                                            .collect(Collectors.toList());
-                logger.info("After status filter: {} orders", filteredOrders.size());
-            } catch (IllegalArgumentException e) {
-                logger.warn("Invalid order status: {}", status);
-            }
-        }
-        
-        // Lọc theo ngày bắt đầu nếu được chỉ định
-        if (startDate != null && !startDate.isEmpty()) {
-            try {
-                LocalDateTime startDateTime = LocalDateTime.parse(startDate);
-                filteredOrders = filteredOrders.stream()
-                                            .filter(order -> order.getCreatedAt().isAfter(startDateTime) || 
-                                                           order.getCreatedAt().isEqual(startDateTime))
-                                            .collect(Collectors.toList());
-                logger.info("After startDate filter: {} orders", filteredOrders.size());
-            } catch (Exception e) {
-                logger.error("Error parsing startDate: {}", startDate, e);
-            }
-        }
-        
-        // Lọc theo ngày kết thúc nếu được chỉ định
-        if (endDate != null && !endDate.isEmpty()) {
-            try {
-                LocalDateTime endDateTime = LocalDateTime.parse(endDate);
-                filteredOrders = filteredOrders.stream()
-                                            .filter(order -> order.getCreatedAt().isBefore(endDateTime) || 
-                                                           order.getCreatedAt().isEqual(endDateTime))
-                                            .collect(Collectors.toList());
-                logger.info("After endDate filter: {} orders", filteredOrders.size());
-            } catch (Exception e) {
-                logger.error("Error parsing endDate: {}", endDate, e);
-            }
-        }
-        
-        // Tính toán tổng số trang
-        int totalItems = filteredOrders.size();
-        int totalPages = (int) Math.ceil((double) totalItems / size);
-        
-        // Áp dụng phân trang
-        List<Order> pagedOrders;
-        if (page >= 0 && size > 0) {
-            int fromIndex = page * size;
-            int toIndex = Math.min(fromIndex + size, filteredOrders.size());
-            
-            if (fromIndex < filteredOrders.size()) {
-                pagedOrders = filteredOrders.subList(fromIndex, toIndex);
-            } else {
-                pagedOrders = new ArrayList<>();
-            }
+        return getFilteredOrders(status, startDate, endDate, page, size, null, null);
+    }
+
+    /**
+     * Lọc và phân trang trên MongoDB.
+     * - cursor == null: phân trang theo số trang (định dạng cũ)
+     * - cursor != null: phân trang keyset, cursor rỗng là trang đầu, trả về nextCursor cho trang sau
+     * - view = "summary": trả về OrderSummary thay vì Order đầy đủ
+     */
+    public Map<String, Object> getFilteredOrders(String status, String startDate, String endDate, int page, int size,
+                                                 String cursor, String view) {
+        logger.info("Filtering orders - status: {}, startDate: {}, endDate: {}, page: {}, size: {}, cursor: {}, view: {}",
+                    status, startDate, endDate, page, size, cursor, view);
+
+        Map<String, Object> result = cursor != null
+                ? orderQueryService.findAfterCursor(status, startDate, endDate, cursor, size, view)
+                : orderQueryService.findPage(status, startDate, endDate, page, size, view);
+
+        // Chỉ bổ sung thông tin user cho các đơn của trang hiện tại
+        List<?> rows = (List<?>) result.get("orders");
+        if (OrderQueryService.VIEW_SUMMARY.equalsIgnoreCase(view)) {
+            userSummaryService.enrichSummaries(rows.stream().map(OrderSummary.class::cast).toList());
         } else {
-            pagedOrders = filteredOrders;
+            userSummaryService.enrichOrders(rows.stream().map(Order.class::cast).toList());
         }
-        
-        // Tạo kết quả với thông tin phân trang
-        Map<String, Object> result = new HashMap<>();
-        result.put("orders", pagedOrders);
-        result.put("currentPage", page);
-        result.put("totalPages", totalPages);
-        result.put("totalItems", totalItems);
-        
         return result;
     }
 
@@ -420,8 +387,11 @@ public class OrderService {
      */
     public Order updateOrderStatus(String orderId, OrderStatus newStatus) {
         Order order = getOrderById(orderId);
+        OrderStatus previousStatus = order.getStatus();
         order.updateStatus(newStatus);
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+        eventPublisher.publishEvent(OrderStatusChangedEvent.of(savedOrder, previousStatus));
+        return savedOrder;
     }
 
     public int getOrderCount() {
@@ -430,93 +400,32 @@ public class OrderService {
 
     // Lấy doanh thu theo ngày
     public Double getRevenueByDate(LocalDate date) {
-        LocalDateTime startOfDay = date.atStartOfDay();
-        LocalDateTime endOfDay = date.plusDays(1).atStartOfDay().minusSeconds(1);
-
-        List<Order> orders = orderRepository.findByCreatedAtBetween(startOfDay, endOfDay);
-
-        return orders.stream()
-                .filter(order -> order.getStatus() == OrderStatus.DELIVERED)
-                .mapToDouble(Order::getTotalAmount)
-                .sum();
+        DailySales dailySales = aggregateDeliveredSalesOn(date);
+        return dailySales != null ? dailySales.getRevenue() : 0.0;
     }
 
     // Lấy lợi nhuận theo ngày
     public Double getProfitByDate(LocalDate date) {
-        Double revenue = getRevenueByDate(date);
-        return revenue * 0.2; // Giả sử lợi nhuận là 20% doanh thu
+        DailySales dailySales = aggregateDeliveredSalesOn(date);
+        return dailySales != null ? dailySales.getProfit() : 0.0;
     }
 
     // Lấy số lượng sản phẩm đã bán theo ngày
     public Integer getQuantitySoldByDate(LocalDate date) {
-        LocalDateTime startOfDay = date.atStartOfDay();
-        LocalDateTime endOfDay = date.plusDays(1).atStartOfDay().minusSeconds(1);
-
-        List<Order> orders = orderRepository.findByCreatedAtBetween(startOfDay, endOfDay);
-
-        return orders.stream()
-                .filter(order -> order.getStatus() == OrderStatus.DELIVERED)
-                .flatMap(order -> order.getItems().stream())
-                .mapToInt(OrderItem::getQuantity)
-                .sum();
+        DailySales dailySales = aggregateDeliveredSalesOn(date);
+        return dailySales != null ? dailySales.getQuantitySold() : 0;
     }
 
-    // Lấy số lượng sản phẩm đã bán theo danh mục
-    public int getQuantitySoldByCategory(String category) {
-        List<Order> allOrders = orderRepository.findAll();
-
-        for (Order order : allOrders) {
-            System.out.println(order);
-        }
-
-        return allOrders.stream()
-                .flatMap(order -> order.getItems().stream())
-                .filter(item -> category.equals(productService.getProductTypeNameById(item.getProductId())))
-                .mapToInt(OrderItem::getQuantity)
-                .sum();
+    // Tổng hợp trên MongoDB, chỉ trả về một dòng kết quả cho ngày cần tính
+    private DailySales aggregateDeliveredSalesOn(LocalDate date) {
+        return salesAggregationService
+                .aggregateDeliveredSalesByDay(date.atStartOfDay(), date.plusDays(1).atStartOfDay())
+                .get(date);
     }
 
-    // Phương thức hỗ trợ để tính toán dữ liệu bán theo danh mục
-    private List<CategorySalesData> calculateCategorySalesData(List<Order> orders) {
-        Map<String, Integer> categorySales = new HashMap<>();
-        final String UNKNOWN_CATEGORY = "Unknown"; // Danh mục mặc định khi không xác định được
-
-        // Tính tổng số lượng bán cho mỗi danh mục
-        for (Order order : orders) {
-            for (OrderItem item : order.getItems()) {
-                // Lấy thông tin sản phẩm
-                String productId = item.getProductId();
-                int quantity = item.getQuantity();
-
-                // Xử lý khi danh mục trả về null
-                String category = productService.getProductTypeNameById(productId);
-
-                // Kiểm tra null và xử lý
-                if (category == null) {
-                    // Thử thay thế bằng cách lấy sản phẩm trực tiếp (nếu có thể)
-                    try {
-                        Product product = productRepository.findById(productId).orElse(null);
-                        if (product != null && product.getProductType() != null) {
-                            category = product.getProductType().getName(); // Giả sử Product có getType() trả về đối tượng có getName()
-                        } else {
-                            logger.warn("Không tìm thấy sản phẩm hoặc loại sản phẩm cho ID: {}", productId);
-                            category = UNKNOWN_CATEGORY;
-                        }
-                    } catch (Exception e) {
-                        logger.error("Lỗi khi lấy thông tin sản phẩm cho ID: {}", productId, e);
-                        category = UNKNOWN_CATEGORY;
-                    }
-                }
-
-                // Cập nhật dữ liệu bán hàng theo danh mục
-                categorySales.put(category, categorySales.getOrDefault(category, 0) + quantity);
-            }
-        }
-
-        // Chuyển đổi từ Map sang List<CategorySalesData>
-        return categorySales.entrySet().stream()
-                .map(entry -> new CategorySalesData(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+    // Số đơn hàng được tạo trong ngày, đếm trên MongoDB thay vì tải danh sách đơn
+    public long countOrdersCreatedOnDate(LocalDate date) {
+        return orderRepository.countByCreatedAtInRange(date.atStartOfDay(), date.plusDays(1).atStartOfDay());
     }
 
     public List<Order> getOrdersCreatedOnDate(LocalDate date) {
@@ -539,45 +448,4 @@ public class OrderService {
     public List<Order> getOrdersBetweenDates(LocalDateTime startDateTime, LocalDateTime endDateTime) {
         return orderRepository.findByCreatedAtBetween(startDateTime, endDateTime);
     }
-
-    /**
-     * Gửi email xác nhận đơn hàng
-     */
-    private void sendOrderConfirmationEmail(Order order) {
-        try {
-            // Lấy thông tin user để lấy email
-            User user = userRepository.findById(order.getUserId())
-                    .orElse(null);
-            
-            if (user != null && user.getEmail() != null) {
-                // Chuẩn bị thông tin cho email
-                Map<String, Object> emailData = new HashMap<>();
-                emailData.put("to", user.getEmail());
-                emailData.put("customerName", user.getName() != null ? user.getName() : user.getUsername());
-                emailData.put("orderId", order.getId());
-                emailData.put("totalAmount", order.getTotalAmount());
-                emailData.put("orderItems", order.getItems());
-                emailData.put("paymentMethod", order.getPaymentMethod());
-                emailData.put("shippingAddress", order.getShippingAddress());
-                
-                // Thêm thông tin coupon nếu có
-                if (order.getCouponCode() != null && !order.getCouponCode().isEmpty()) {
-                    emailData.put("couponCode", order.getCouponCode());
-                    emailData.put("couponDiscount", order.getCouponDiscount());
-                    emailData.put("finalAmount", order.getFinalAmount());
-                    emailData.put("hasCoupon", true);
-                } else {
-                    emailData.put("hasCoupon", false);
-                }
-                
-                // Gửi email
-                EmailService emailService = applicationContext.getBean(EmailService.class);
-                emailService.sendOrderConfirmationEmail(emailData);
-            } else {
-                logger.warn("User email not found for order: {}", order.getId());
-            }
-        } catch (Exception e) {
-            logger.error("Error sending order confirmation email: {}", e.getMessage());
-        }
-    }
 }
\ No newline at end of file
@@ -1,57 +1,75 @@
 package com.example.ecommerceproject.service;
 
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
 import com.example.ecommerceproject.model.Order;
 import com.example.ecommerceproject.model.OrderStatus;
+import com.example.ecommerceproject.model.StatusHistoryEntry;
 import com.example.ecommerceproject.repository.OrderRepository;
 import com.example.ecommerceproject.state.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiPredicate;
+
 /**
  * OrderStateManager - Context (Component of State Pattern)
  * Manages the state transitions for orders using the State Pattern
+ * - Transitions are written with a conditional $set status + $push statusHistory instead of saving the whole order
+ * - Bulk transitions validate every order in memory and apply all changes with one bulkWrite per batch
  */
 @Service
 public class OrderStateManager {
     private static final Logger logger = LoggerFactory.getLogger(OrderStateManager.class);
-    
+
+    private static final int BULK_BATCH_SIZE = 1000;
+    private static final int RECENT_TRANSITION_IDS = 5;
+
     @Autowired
     private OrderRepository orderRepository;
 
-    private OrderState getStateForStatus(OrderStatus status) {
-        switch (status) {
-            case PENDING:
-                return new PendingState();
-            case PAID:
-                return new PaidState();
-            case SHIPPING:
-                return new ShippingState();
-            case DELIVERED:
-                return new DeliveredState();
-            case CANCELLED:
-                return new CancelledState();
-            default:
-                throw new IllegalArgumentException("Unknown order status: " + status);
-        }
-    }
+    @Autowired
+    private OrderStateFactory orderStateFactory;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Transactional
     public boolean processOrder(String orderId) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("Order not found with ID: " + orderId));
-                
-        OrderState currentState = getStateForStatus(order.getStatus());
+
+        OrderState currentState = orderStateFactory.getState(order.getStatus());
         logger.info("Processing order {} in state {}", orderId, currentState.getStateName());
-        
-        boolean result = currentState.process(order);
+
+        OrderStatus previousStatus = order.getStatus();
+        boolean result = currentState.process(order) && applyTransition(order, previousStatus);
         if (result) {
-            orderRepository.save(order);
+            eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, previousStatus));
             logger.info("Order {} successfully processed to state {}", orderId, order.getStatus());
         }
-        
+
         return result;
     }
 
@@ -59,16 +77,158 @@ public class OrderStateManager {
     public boolean cancelOrder(String orderId) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("Order not found with ID: " + orderId));
-                
-        OrderState currentState = getStateForStatus(order.getStatus());
+
+        OrderState currentState = orderStateFactory.getState(order.getStatus());
         logger.info("Attempting to cancel order {} in state {}", orderId, currentState.getStateName());
-        
-        boolean result = currentState.cancel(order);
+
+        OrderStatus previousStatus = order.getStatus();
+        boolean result = currentState.cancel(order) && applyTransition(order, previousStatus);
         if (result) {
-            orderRepository.save(order);
+            eventPublisher.publishEvent(OrderStatusChangedEvent.of(order, previousStatus));
             logger.info("Order {} successfully cancelled from state {}", orderId, currentState.getStateName());
         }
-        
+
+        return result;
+    }
+
+    /**
+     * Move many orders to their next state (e.g. ship all PAID orders of a warehouse batch)
+     * @return updatedOrders, skipped (transition not allowed or changed concurrently) and notFound order ids
+     */
+    public Map<String, Object> processOrders(List<String> orderIds) {
+        return transitionAll(orderIds, null, OrderState::process);
+    }
+
+    public Map<String, Object> cancelOrders(List<String> orderIds) {
+        return transitionAll(orderIds, null, OrderState::cancel);
+    }
+
+    /**
+     * Hủy các đơn chỉ khi chúng vẫn đang PENDING (ví dụ đơn quá hạn thanh toán);
+     * đơn đã chuyển sang trạng thái khác, kể cả đồng thời trong lúc hủy, được trả về trong skipped
+     */
+    public Map<String, Object> cancelPendingOrders(List<String> orderIds) {
+        return transitionAll(orderIds, OrderStatus.PENDING, OrderState::cancel);
+    }
+
+    private Map<String, Object> transitionAll(List<String> orderIds, OrderStatus requiredStatus,
+                                              BiPredicate<OrderState, Order> transition) {
+        List<Order> updatedOrders = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        List<String> notFound = new ArrayList<>();
+        List<OrderStatusChangedEvent.Change> changes = new ArrayList<>();
+
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        for (int from = 0; from < distinctIds.size(); from += BULK_BATCH_SIZE) {
+            List<String> batchIds = distinctIds.subList(from, Math.min(from + BULK_BATCH_SIZE, distinctIds.size()));
+            transitionBatch(batchIds, requiredStatus, transition, changes, skipped, notFound);
+        }
+
+        // Một sự kiện cho cả lô: rollup, sổ cái và cache chỉ cập nhật một lần
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(new OrderStatusChangedEvent(changes));
+            changes.forEach(change -> updatedOrders.add(change.getOrder()));
+        }
+        logger.info("Bulk transition: {} updated, {} skipped, {} not found",
+                updatedOrders.size(), skipped.size(), notFound.size());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("updatedOrders", updatedOrders);
+        result.put("skipped", skipped);
+        result.put("notFound", notFound);
         return result;
     }
-}
\ No newline at end of file
+
+    private void transitionBatch(List<String> orderIds, OrderStatus requiredStatus,
+                                 BiPredicate<OrderState, Order> transition,
+                                 List<OrderStatusChangedEvent.Change> changes,
+                                 List<String> skipped, List<String> notFound) {
+        Map<String, Order> orders = new HashMap<>();
+        mongoTemplate.find(new Query(Criteria.where("_id").in(orderIds)), Order.class)
+                .forEach(order -> orders.put(order.getId(), order));
+
+        // Mã riêng của lô được ghi vào từng đơn để nhận ra đúng các đơn do lệnh bulk này cập nhật
+        LocalDateTime batchTime = LocalDateTime.now();
+        String transitionId = UUID.randomUUID().toString();
+        List<OrderStatusChangedEvent.Change> candidates = new ArrayList<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class);
+
+        for (String orderId : orderIds) {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                notFound.add(orderId);
+                continue;
+            }
+
+            OrderStatus previousStatus = order.getStatus();
+            if (requiredStatus != null && previousStatus != requiredStatus) {
+                skipped.add(orderId);
+                continue;
+            }
+            OrderState state;
+            try {
+                state = orderStateFactory.getState(previousStatus);
+            } catch (IllegalArgumentException e) {
+                skipped.add(orderId);
+                continue;
+            }
+            if (!transition.test(state, order)) {
+                skipped.add(orderId);
+                continue;
+            }
+
+            order.setUpdatedAt(batchTime);
+            bulk.updateOne(guardedQuery(order, previousStatus), transitionUpdate(order)
+                    .push("recentTransitionIds").slice(-RECENT_TRANSITION_IDS).each(transitionId));
+            candidates.add(new OrderStatusChangedEvent.Change(order, previousStatus));
+        }
+
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        int matched = bulk.execute().getMatchedCount();
+        if (matched == candidates.size()) {
+            changes.addAll(candidates);
+            return;
+        }
+
+        // Một số đơn đã bị đổi trạng thái đồng thời: chỉ giữ các đơn mang mã của lô này
+        // (giữ vài mã gần nhất nên lô khác cập nhật tiếp đơn đó ngay sau cũng không làm mất mã)
+        Query applied = new Query(Criteria.where("_id").in(candidates.stream().map(c -> c.getOrder().getId()).toList())
+                .and("recentTransitionIds").is(transitionId));
+        applied.fields().include("_id");
+        Set<String> appliedIds = new HashSet<>();
+        mongoTemplate.find(applied, Order.class).forEach(order -> appliedIds.add(order.getId()));
+
+        for (OrderStatusChangedEvent.Change candidate : candidates) {
+            if (appliedIds.contains(candidate.getOrder().getId())) {
+                changes.add(candidate);
+            } else {
+                skipped.add(candidate.getOrder().getId());
+            }
+        }
+    }
+
+    // Ghi trạng thái mới nếu trạng thái trong DB vẫn là trạng thái đã đọc
+    private boolean applyTransition(Order order, OrderStatus previousStatus) {
+        boolean applied = mongoTemplate.updateFirst(guardedQuery(order, previousStatus), transitionUpdate(order), Order.class)
+                .getMatchedCount() > 0;
+        if (!applied) {
+            logger.warn("Order {} changed state concurrently, transition from {} skipped", order.getId(), previousStatus);
+        }
+        return applied;
+    }
+
+    private Query guardedQuery(Order order, OrderStatus previousStatus) {
+        return new Query(Criteria.where("_id").is(order.getId()).and("status").is(previousStatus));
+    }
+
+    private Update transitionUpdate(Order order) {
+        List<StatusHistoryEntry> history = order.getStatusHistory();
+        return new Update()
+                .set("status", order.getStatus())
+                .set("updatedAt", order.getUpdatedAt())
+                .push("statusHistory", history.get(history.size() - 1));
+    }
+}
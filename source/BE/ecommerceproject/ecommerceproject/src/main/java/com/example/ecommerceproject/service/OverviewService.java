@@ -5,10 +5,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @Service
 public class OverviewService
@@ -17,13 +17,19 @@ public class OverviewService
     private final OrderService orderService;
     private final ProductService productService;
     private final ProductTypeService productTypeService;
+    private final SalesAggregationService salesAggregationService;
+    private final SalesLedgerService salesLedgerService;
 
     @Autowired
-    public OverviewService(UserService userService, OrderService orderService, ProductService productService, ProductTypeService productTypeService) {
+    public OverviewService(UserService userService, OrderService orderService, ProductService productService,
+                           ProductTypeService productTypeService, SalesAggregationService salesAggregationService,
+                           SalesLedgerService salesLedgerService) {
         this.userService = userService;
         this.orderService = orderService;
         this.productService = productService;
         this.productTypeService = productTypeService;
+        this.salesAggregationService = salesAggregationService;
+        this.salesLedgerService = salesLedgerService;
     }
 
     // Lấy tổng số Users
@@ -55,118 +61,51 @@ public class OverviewService
     // Lấy số lượng Orders mới hôm nay
     public int getNewOrdersCreateToDay() {
         LocalDate today = LocalDate.now();
-        return orderService.getOrdersCreatedOnDate(today).size();
+        return (int) orderService.countOrdersCreatedOnDate(today);
     }
 
-    // Lấy tổng số Revenue
+    // Lấy tổng số Revenue (đọc từ sổ cái sales_ledger)
     public double getTotalRevenue() {
-        List<Order> allOrders = orderService.getAllOrders();
-        return allOrders.stream()
-                .filter(order -> order.getStatus() == OrderStatus.DELIVERED)
-                .mapToDouble(Order::getTotalAmount)
-                .sum();
+        return salesLedgerService.getLedger().getRevenue();
     }
 
     // Lấy tổng số Profit
     public double getTotalProfit() {
-        List<Order> completedOrders = orderService.getAllOrders().stream()
-                .filter(order -> order.getStatus() == OrderStatus.DELIVERED)
-                .toList();
-
-        double totalProfit = 0;
-        for (Order order : completedOrders) {
-            for (OrderItem item : order.getItems()) {
-                Product product = productService.getProductById(item.getProductId());
-                int quantity = item.getQuantity();
-                double costPrice = product.getPrice() - product.getPrice() * 0.2;
-                double sellingPrice = product.getPrice();
-                // TODO: update totalProfit
-                totalProfit += (sellingPrice - costPrice) * quantity;
-            }
-        }
-
-        return totalProfit;
+        return salesLedgerService.getLedger().getProfit();
     }
 
     // Lấy dữ liệu doanh thu và lợi nhuận 7 ngày gần nhất
     public List<TimeBasedChartData> getRevenueAndProfitOverview() {
-        List<TimeBasedChartData> result = new ArrayList<>();
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7 - 1);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        // Duyệt qua các ngày trong khoảng thời gian
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String formattedDate = date.format(formatter);
-
-            // Lấy doanh thu và lợi nhuận từ OrderService
-            Double revenue = orderService.getRevenueByDate(date);
-            Double profit = orderService.getProfitByDate(date);
 
-            // Thêm dữ liệu vào danh sách kết quả
-            result.add(new TimeBasedChartData(formattedDate, revenue, profit, null));
-        }
-
-        return result;
+        return salesAggregationService.getDailyRevenueAndProfit(startDate, endDate);
     }
 
     // Lấy dữ liệu số lượng bán trong 7 ngày gần nhất
     public List<TimeBasedChartData> getQuantitySoldOverview() {
-        List<TimeBasedChartData> result = new ArrayList<>();
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7 - 1);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        // Duyệt qua các ngày trong khoảng thời gian
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String formattedDate = date.format(formatter);
 
-            // Lấy số lượng bán từ OrderService
-            Integer quantitySold = orderService.getQuantitySoldByDate(date);
-
-            // Thêm dữ liệu vào danh sách kết quả
-            result.add(new TimeBasedChartData(formattedDate, null, null, quantitySold));
-        }
-
-        return result;
+        return salesAggregationService.getDailyQuantitySold(startDate, endDate);
     }
 
-    // Lấy dữ liệu bán theo danh mục sản phẩm trong 7 ngày gần nhất
+    // Lấy dữ liệu bán theo danh mục sản phẩm trong 7 ngày gần nhất (kể cả danh mục chưa bán được)
     public List<CategorySalesData> getCategorySalesOverview() {
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7 - 1);
 
-        List<CategorySalesData> result = new ArrayList<>();
-
-        // Lấy danh sách các danh mục sản phẩm
-        List<String> categories = productTypeService.getAllProductTypeNames();
-
-        // Duyệt qua các danh mục và lấy số lượng bán cho mỗi danh mục
-        for (String category : categories) {
-            List<Order> ordersInRange = orderService.getOrdersCreatedBetweenDates(startDate, endDate)
-                    .stream()
-                    .filter(order -> order.getStatus() == OrderStatus.DELIVERED)
-                    .toList();
-
-            int quantitySold = 0;
-            double revenue = 0;
-
-            for (Order order : ordersInRange) {
-                for (OrderItem item : order.getItems()) {
-                    Product product = productService.getProductById(item.getProductId());
-                    if (product.getProductType().getName().equals(category)) {
-                        quantitySold += item.getQuantity();
-                        revenue += item.getPrice() * item.getQuantity();
-                    }
-                }
-            }
-
-            CategorySalesData categoryData = new CategorySalesData();
-            categoryData.setCategoryName(category);
-            categoryData.setTotalQuantitySold(quantitySold);
-            result.add(categoryData);
+        Map<String, Integer> quantityByCategory = new LinkedHashMap<>();
+        for (String category : productTypeService.getAllProductTypeNames()) {
+            quantityByCategory.put(category, 0);
+        }
+        for (CategorySalesData categorySales : salesAggregationService.getCategorySales(startDate, endDate)) {
+            quantityByCategory.computeIfPresent(categorySales.getCategoryName(),
+                    (name, quantity) -> quantity + categorySales.getTotalQuantitySold());
         }
 
+        List<CategorySalesData> result = new ArrayList<>();
+        quantityByCategory.forEach((category, quantity) -> result.add(new CategorySalesData(category, quantity)));
         return result;
     }
 
@@ -0,0 +1,198 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.event.CatalogUpdatedEvent;
+import com.example.ecommerceproject.event.ProductsChangedEvent;
+import com.example.ecommerceproject.model.Product;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Giữ bản chụp danh mục sản phẩm trong bộ nhớ cho các API đọc (tất cả, theo brand/loại/tag).
+ * - Nạp toàn bộ khi khởi động (brand/productType/tag được resolve một lần) và nạp lại định kỳ
+ * - Khi sản phẩm thay đổi chỉ đọc lại các sản phẩm đó rồi thay bản chụp mới bằng một phép gán (copy-on-write),
+ *   nên luồng đọc không bao giờ bị khóa và luôn thấy một bản chụp nhất quán
+ * - Mọi thao tác đọc MongoDB và thay bản chụp chạy tuần tự trên một luồng ghi nền: id thay đổi được gom lại,
+ *   id đến trong lúc nạp toàn bộ được đọc lại ngay sau khi nạp xong, và luồng đặt hàng không phải chờ
+ * - Thay đổi chỉ về tồn kho/soldCount vẫn tạo bản chụp mới nhưng được phát dưới dạng stockOnly để chỉ mục tìm kiếm bỏ qua
+ * - Mỗi lần thay đổi phát CatalogUpdatedEvent (trên luồng ghi, đúng thứ tự) cho các chỉ mục tìm kiếm
+ */
+@Service
+public class ProductCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCatalog.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("catalog-writer").factory());
+
+    // Việc đang chờ luồng ghi: id cần đọc lại và yêu cầu nạp lại toàn bộ
+    private final Set<String> pendingIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile boolean reloadStarted;
+
+    // null khi chưa nạp xong: ProductService đọc thẳng từ MongoDB
+    private volatile CatalogSnapshot snapshot;
+
+    @Autowired
+    public ProductCatalog(MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    public CatalogSnapshot current() {
+        return snapshot;
+    }
+
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${catalog.snapshot.refresh-ms:600000}", fixedDelayString = "${catalog.snapshot.refresh-ms:600000}")
+    public void reload() {
+        reloadStarted = true;
+        reloadRequested.set(true);
+        scheduleDrain();
+    }
+
+    // Brand/loại/tag đổi tên ảnh hưởng tới nhiều sản phẩm: nạp lại toàn bộ nếu đã nạp (hoặc đang nạp) trước đó
+    public void reloadIfLoaded() {
+        if (reloadStarted) {
+            reload();
+        }
+    }
+
+    /**
+     * Đánh dấu các sản phẩm cần đọc lại; luồng ghi đọc chúng bằng một truy vấn $in, id không còn trong DB bị xóa
+     */
+    public void refresh(Collection<String> productIds) {
+        if (!reloadStarted || productIds.isEmpty()) {
+            return;
+        }
+        pendingIds.addAll(productIds);
+        scheduleDrain();
+    }
+
+    @EventListener
+    public void onProductsChanged(ProductsChangedEvent event) {
+        refresh(event.getProductIds());
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Đang tắt ứng dụng
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    // Chạy trên luồng ghi; việc đến trong lúc chạy được xử lý ở lần drain kế tiếp
+    private void drain() {
+        drainScheduled.set(false);
+        if (reloadRequested.getAndSet(false)) {
+            loadAll();
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (Iterator<String> iterator = pendingIds.iterator(); iterator.hasNext(); ) {
+            ids.add(iterator.next());
+            iterator.remove();
+        }
+        if (!ids.isEmpty() && snapshot != null) {
+            apply(ids);
+        }
+    }
+
+    private void loadAll() {
+        try {
+            long start = System.currentTimeMillis();
+            CatalogSnapshot loaded = CatalogSnapshot.of(mongoTemplate.findAll(Product.class));
+            snapshot = loaded;
+            eventPublisher.publishEvent(CatalogUpdatedEvent.reloaded(loaded));
+            logger.info("Loaded catalog snapshot with {} products in {} ms", loaded.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Không thể nạp bản chụp danh mục sản phẩm", e);
+        }
+    }
+
+    private void apply(Set<String> productIds) {
+        try {
+            List<Product> products = mongoTemplate.find(new Query(Criteria.where("_id").in(productIds)), Product.class);
+            Set<String> removed = new HashSet<>(productIds);
+            products.forEach(product -> removed.remove(product.getId()));
+
+            // Sản phẩm mới đọc là bản sao riêng: chỉ được công bố qua bản chụp mới, không sửa gì trong bản chụp hiện tại
+            CatalogSnapshot current = snapshot;
+            List<Product> changed = new ArrayList<>();
+            List<Product> stockChanged = new ArrayList<>();
+            for (Product product : products) {
+                Product existing = current.getById(product.getId());
+                if (existing != null && differsOnlyInStock(existing, product)) {
+                    stockChanged.add(product);
+                } else {
+                    changed.add(product);
+                }
+            }
+
+            if (!products.isEmpty() || !removed.isEmpty()) {
+                snapshot = current.withChanges(products, removed);
+            }
+            if (!changed.isEmpty() || !removed.isEmpty()) {
+                eventPublisher.publishEvent(CatalogUpdatedEvent.changed(snapshot, changed, removed));
+            }
+            if (!stockChanged.isEmpty()) {
+                eventPublisher.publishEvent(CatalogUpdatedEvent.stockChanged(snapshot, stockChanged));
+            }
+        } catch (Exception e) {
+            // Bản chụp cũ vẫn được dùng tới lần nạp lại định kỳ
+            logger.error("Không thể cập nhật bản chụp cho sản phẩm {}", productIds, e);
+        }
+    }
+
+    /**
+     * true nếu sản phẩm mới đọc chỉ khác bản trong bản chụp ở quantity/soldCount (brand/loại/tag không đổi
+     * nên chỉ mục tìm kiếm không cần cập nhật). Chỉ tạm đổi bản mới đọc, bản trong bản chụp không bị chạm tới.
+     */
+    private boolean differsOnlyInStock(Product existing, Product fresh) {
+        int quantity = fresh.getQuantity();
+        int soldCount = fresh.getSoldCount();
+        fresh.setQuantity(existing.getQuantity());
+        fresh.setSoldCount(existing.getSoldCount());
+        boolean stockOnly = fresh.equals(existing);
+        fresh.setQuantity(quantity);
+        fresh.setSoldCount(soldCount);
+        return stockOnly;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Product;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Cập nhật ProductCatalog sau mỗi lần lưu/xóa sản phẩm qua repository/MongoTemplate.
+ * Thay đổi brand/productType/tag được CatalogReferencePropagator ghi vào sản phẩm rồi mới nạp lại danh mục.
+ */
+@Component
+public class ProductCatalogMongoListener extends AbstractMongoEventListener<Object> {
+
+    private final ProductCatalog productCatalog;
+
+    @Autowired
+    public ProductCatalogMongoListener(ProductCatalog productCatalog) {
+        this.productCatalog = productCatalog;
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        Object source = event.getSource();
+        if (source instanceof Product product) {
+            productCatalog.refresh(List.of(product.getId()));
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        Class<?> type = event.getType();
+        if (type == Product.class) {
+            String id = idOf(event.getSource());
+            if (id != null) {
+                productCatalog.refresh(List.of(id));
+            } else {
+                productCatalog.reloadIfLoaded();
+            }
+        }
+    }
+
+    // Chỉ xử lý lệnh xóa theo một _id cụ thể; các điều kiện khác thì nạp lại toàn bộ
+    private String idOf(Document query) {
+        Object id = query.get("_id");
+        if (id instanceof ObjectId objectId) {
+            return objectId.toHexString();
+        }
+        return id instanceof String value ? value : null;
+    }
+}
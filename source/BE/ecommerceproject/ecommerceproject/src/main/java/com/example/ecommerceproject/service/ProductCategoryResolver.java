@@ -0,0 +1,135 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.ProductType;
+import com.example.ecommerceproject.repository.ProductTypeRepository;
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tìm tên danh mục (ProductType) cho nhiều sản phẩm cùng lúc.
+ * - products: một truy vấn $in duy nhất, chỉ lấy productType nhúng {_id, name} và dùng thẳng tên trong đó
+ * - product_types: map id -> tên trong bộ nhớ, chỉ dùng cho bản ghi cũ chưa được chuyển sang bản sao nhúng
+ *   (còn @DBRef hoặc thiếu name); nạp khi cần lần đầu và nạp lại khi gặp id lạ hoặc khi danh mục thay đổi
+ */
+@Service
+public class ProductCategoryResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCategoryResolver.class);
+
+    public static final String UNKNOWN_CATEGORY = "Unknown";
+    private static final String PRODUCTS = "products";
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductTypeRepository productTypeRepository;
+
+    private volatile Map<String, String> productTypeNames;
+
+    @Autowired
+    public ProductCategoryResolver(MongoTemplate mongoTemplate, ProductTypeRepository productTypeRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.productTypeRepository = productTypeRepository;
+    }
+
+    /**
+     * Trả về map productId -> tên danh mục cho toàn bộ productIds.
+     * Sản phẩm không tồn tại hoặc không có danh mục được gán UNKNOWN_CATEGORY.
+     */
+    public Map<String, String> resolveCategoryNames(Collection<String> productIds) {
+        Set<String> ids = new LinkedHashSet<>(productIds);
+        Map<String, String> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        Map<String, String> legacyTypeIds = new HashMap<>();
+        for (Document product : findProductTypes(ids)) {
+            String productId = String.valueOf(product.get("_id"));
+            Object productType = product.get("productType");
+            if (productType instanceof Document embedded && embedded.getString("name") != null) {
+                result.put(productId, embedded.getString("name"));
+            } else {
+                String productTypeId = referenceId(productType);
+                if (productTypeId != null) {
+                    legacyTypeIds.put(productId, productTypeId);
+                }
+            }
+        }
+
+        if (!legacyTypeIds.isEmpty()) {
+            Map<String, String> names = getProductTypeNames();
+            if (!names.keySet().containsAll(legacyTypeIds.values())) {
+                names = reloadProductTypeNames();
+            }
+            for (Map.Entry<String, String> entry : legacyTypeIds.entrySet()) {
+                String name = names.get(entry.getValue());
+                if (name != null) {
+                    result.put(entry.getKey(), name);
+                }
+            }
+        }
+
+        for (String productId : ids) {
+            if (!result.containsKey(productId)) {
+                logger.warn("Không tìm thấy sản phẩm hoặc loại sản phẩm cho ID: {}", productId);
+                result.put(productId, UNKNOWN_CATEGORY);
+            }
+        }
+        return result;
+    }
+
+    // Gọi khi thêm/sửa/xóa loại sản phẩm để lần tra cứu sau nạp lại map
+    public void invalidate() {
+        productTypeNames = null;
+    }
+
+    private Map<String, String> getProductTypeNames() {
+        Map<String, String> names = productTypeNames;
+        return names != null ? names : reloadProductTypeNames();
+    }
+
+    private synchronized Map<String, String> reloadProductTypeNames() {
+        Map<String, String> names = new HashMap<>();
+        for (ProductType productType : productTypeRepository.findAll()) {
+            if (productType.getName() != null) {
+                names.put(productType.getId(), productType.getName());
+            }
+        }
+        productTypeNames = Map.copyOf(names);
+        return productTypeNames;
+    }
+
+    // Đọc thẳng Document chỉ với trường productType: bản sao nhúng có sẵn tên, bản ghi cũ có thể vẫn là @DBRef
+    private List<Document> findProductTypes(Set<String> productIds) {
+        List<Object> keys = productIds.stream()
+                .map(id -> ObjectId.isValid(id) ? (Object) new ObjectId(id) : id)
+                .toList();
+        Query query = new Query(Criteria.where("_id").in(keys));
+        query.fields().include("productType");
+        return mongoTemplate.find(query, Document.class, PRODUCTS);
+    }
+
+    private String referenceId(Object reference) {
+        if (reference instanceof DBRef dbRef) {
+            return String.valueOf(dbRef.getId());
+        }
+        if (reference instanceof Document document && document.get("_id") != null) {
+            return String.valueOf(document.get("_id"));
+        }
+        return null;
+    }
+}
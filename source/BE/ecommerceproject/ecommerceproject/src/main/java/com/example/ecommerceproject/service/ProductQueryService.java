@@ -0,0 +1,248 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Danh sách sản phẩm phân trang trực tiếp trên MongoDB.
+ * - Sắp xếp theo (khóa, _id) với khóa là price, createdAt, soldCount hoặc discountPercent, mỗi khóa có index tương ứng
+ * - Phân trang keyset bằng cursor nên trang 500 tốn bằng trang đầu; page/size (skip) vẫn được giữ cho client cũ
+ * - Tổng số sản phẩm không đếm lại mỗi trang: lấy từ bản chụp danh mục hoặc estimatedCount được cache theo TTL
+ */
+@Service
+public class ProductQueryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductQueryService.class);
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductCatalog productCatalog;
+    private final long countTtlMillis;
+
+    private volatile long estimatedCount;
+    private volatile long estimatedCountExpiresAt;
+
+    @Autowired
+    public ProductQueryService(MongoTemplate mongoTemplate,
+                               ProductCatalog productCatalog,
+                               @Value("${products.feed.count-ttl-ms:60000}") long countTtlMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.productCatalog = productCatalog;
+        this.countTtlMillis = countTtlMillis;
+    }
+
+    /**
+     * Khóa sắp xếp của danh sách; DEFAULT giữ thứ tự _id như PageRequest trước đây
+     */
+    public enum SortKey {
+        DEFAULT(null, Sort.Direction.ASC),
+        PRICE("price", Sort.Direction.ASC),
+        CREATED_AT("createdAt", Sort.Direction.DESC),
+        SOLD_COUNT("soldCount", Sort.Direction.DESC),
+        DISCOUNT("discountPercent", Sort.Direction.DESC);
+
+        private final String field;
+        private final Sort.Direction defaultDirection;
+
+        SortKey(String field, Sort.Direction defaultDirection) {
+            this.field = field;
+            this.defaultDirection = defaultDirection;
+        }
+
+        // Chấp nhận cả tên trường lẫn bí danh dùng trên giao diện (newest, bestSelling)
+        public static SortKey parse(String value) {
+            if (value == null || value.isEmpty()) {
+                return DEFAULT;
+            }
+            return switch (value.toLowerCase()) {
+                case "price" -> PRICE;
+                case "createdat", "newest" -> CREATED_AT;
+                case "soldcount", "bestselling" -> SOLD_COUNT;
+                case "discount", "discountpercent" -> DISCOUNT;
+                default -> throw new IllegalArgumentException("Unsupported sort key: " + value);
+            };
+        }
+    }
+
+    /**
+     * Phân trang theo số trang, giữ nguyên định dạng cũ (products, currentPage, totalItems, totalPages)
+     * và trả thêm nextCursor để client có thể chuyển sang phân trang keyset
+     */
+    public Map<String, Object> findPage(int page, int size, String sort, String direction) {
+        int pageSize = normalizeSize(size);
+        int pageNumber = Math.max(page, 0);
+        SortKey key = SortKey.parse(sort);
+        Sort.Direction dir = parseDirection(key, direction);
+
+        List<Product> rows = find(new Query(), key, dir, (long) pageNumber * pageSize, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<Product> products = hasMore ? rows.subList(0, pageSize) : rows;
+
+        long totalItems = estimateTotal();
+        Map<String, Object> result = new HashMap<>();
+        result.put("products", new ArrayList<>(products));
+        result.put("currentPage", pageNumber);
+        result.put("totalItems", totalItems);
+        result.put("totalPages", (int) Math.ceil((double) totalItems / pageSize));
+        result.put("nextCursor", hasMore ? Cursor.of(key, dir, products.get(products.size() - 1)).encode() : null);
+        result.put("hasMore", hasMore);
+        return result;
+    }
+
+    /**
+     * Phân trang keyset: trả về products, nextCursor (null nếu hết dữ liệu) và hasMore.
+     * cursor rỗng là trang đầu; cursor mang theo khóa sắp xếp nên sort/direction chỉ có tác dụng ở trang đầu.
+     * totalItems/totalPages chỉ được trả khi includeTotal = true.
+     */
+    public Map<String, Object> findAfterCursor(String cursor, int size, String sort, String direction, boolean includeTotal) {
+        int pageSize = normalizeSize(size);
+        SortKey key;
+        Sort.Direction dir;
+        Query query = new Query();
+
+        if (cursor != null && !cursor.isEmpty()) {
+            Cursor position = Cursor.decode(cursor);
+            key = position.key();
+            dir = position.direction();
+            query.addCriteria(position.after());
+        } else {
+            key = SortKey.parse(sort);
+            dir = parseDirection(key, direction);
+        }
+
+        // Lấy dư một phần tử để biết còn trang sau hay không
+        List<Product> rows = find(query, key, dir, 0, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<Product> products = hasMore ? rows.subList(0, pageSize) : rows;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("products", new ArrayList<>(products));
+        result.put("nextCursor", hasMore ? Cursor.of(key, dir, products.get(products.size() - 1)).encode() : null);
+        result.put("hasMore", hasMore);
+        if (includeTotal) {
+            long totalItems = estimateTotal();
+            result.put("totalItems", totalItems);
+            result.put("totalPages", (int) Math.ceil((double) totalItems / pageSize));
+        }
+        return result;
+    }
+
+    private List<Product> find(Query query, SortKey key, Sort.Direction direction, long skip, int limit) {
+        Sort sort = key.field == null
+                ? Sort.by(direction, "_id")
+                : Sort.by(new Sort.Order(direction, key.field), new Sort.Order(direction, "_id"));
+        return mongoTemplate.find(query.with(sort).skip(skip).limit(limit), Product.class);
+    }
+
+    // Bản chụp danh mục đã nạp thì dùng số lượng chính xác của nó, nếu không thì dùng estimatedCount (đọc metadata)
+    private long estimateTotal() {
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot != null) {
+            return snapshot.size();
+        }
+
+        long now = System.currentTimeMillis();
+        if (estimatedCountExpiresAt > now) {
+            return estimatedCount;
+        }
+        try {
+            estimatedCount = mongoTemplate.estimatedCount(Product.class);
+            estimatedCountExpiresAt = now + countTtlMillis;
+        } catch (Exception e) {
+            logger.error("Error estimating product count", e);
+        }
+        return estimatedCount;
+    }
+
+    private Sort.Direction parseDirection(SortKey key, String direction) {
+        if (direction == null || direction.isEmpty()) {
+            return key.defaultDirection;
+        }
+        return Sort.Direction.fromOptionalString(direction)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid sort direction: " + direction));
+    }
+
+    private int normalizeSize(int size) {
+        return size <= 0 ? 10 : Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    // Vị trí của phần tử cuối trang (khóa sắp xếp, hướng, giá trị khóa, _id), mã hóa base64 url-safe để trả cho client
+    private record Cursor(SortKey key, Sort.Direction direction, Object value, String id) {
+
+        static Cursor of(SortKey key, Sort.Direction direction, Product product) {
+            Object value = switch (key) {
+                case DEFAULT -> null;
+                case PRICE -> product.getPrice();
+                case CREATED_AT -> product.getCreatedAt();
+                case SOLD_COUNT -> product.getSoldCount();
+                case DISCOUNT -> product.getDiscountPercent();
+            };
+            return new Cursor(key, direction, value, product.getId());
+        }
+
+        // Các sản phẩm đứng sau vị trí này theo (khóa, _id); null đứng đầu khi tăng dần và cuối khi giảm dần như MongoDB
+        Criteria after() {
+            boolean asc = direction == Sort.Direction.ASC;
+            if (key.field == null) {
+                return asc ? Criteria.where("_id").gt(id) : Criteria.where("_id").lt(id);
+            }
+
+            Criteria sameValue = asc
+                    ? Criteria.where(key.field).is(value).and("_id").gt(id)
+                    : Criteria.where(key.field).is(value).and("_id").lt(id);
+            if (value == null) {
+                return asc ? new Criteria().orOperator(sameValue, Criteria.where(key.field).ne(null)) : sameValue;
+            }
+            Criteria pastValue = asc ? Criteria.where(key.field).gt(value) : Criteria.where(key.field).lt(value);
+            return asc
+                    ? new Criteria().orOperator(pastValue, sameValue)
+                    : new Criteria().orOperator(pastValue, sameValue, Criteria.where(key.field).is(null));
+        }
+
+        String encode() {
+            String raw = key + "|" + direction + "|" + (value != null ? value : "") + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\\|", 4);
+                SortKey key = SortKey.valueOf(parts[0]);
+                Sort.Direction direction = Sort.Direction.valueOf(parts[1]);
+                return new Cursor(key, direction, parseValue(key, parts[2]), parts[3]);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+
+        private static Object parseValue(SortKey key, String value) {
+            if (value.isEmpty()) {
+                return null;
+            }
+            return switch (key) {
+                case DEFAULT -> null;
+                case PRICE, DISCOUNT -> Double.parseDouble(value);
+                case CREATED_AT -> LocalDateTime.parse(value);
+                case SOLD_COUNT -> Integer.parseInt(value);
+            };
+        }
+    }
+}
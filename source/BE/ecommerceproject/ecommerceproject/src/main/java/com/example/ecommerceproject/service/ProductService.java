@@ -1,23 +1,28 @@
 package com.example.ecommerceproject.service;
 
-import com.example.ecommerceproject.model.Brand;
+import com.example.ecommerceproject.model.BrandSnapshot;
 import com.example.ecommerceproject.model.Product;
 import com.example.ecommerceproject.model.ProductType;
+import com.example.ecommerceproject.model.ProductTypeSnapshot;
 import com.example.ecommerceproject.model.Tag;
+import com.example.ecommerceproject.model.TagSnapshot;
 import com.example.ecommerceproject.repository.BrandRepository;
 import com.example.ecommerceproject.repository.ProductRepository;
 import com.example.ecommerceproject.repository.ProductTypeRepository;
 import com.example.ecommerceproject.repository.TagRepository;
+import com.example.ecommerceproject.search.FacetQuery;
+import com.example.ecommerceproject.search.ProductFacetIndex;
+import com.example.ecommerceproject.search.ProductSearchIndex;
+import com.example.ecommerceproject.search.ProductSuggestService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -28,33 +33,62 @@ public class ProductService {
     private final BrandRepository brandRepository;
     private final ProductTypeRepository productTypeRepository;
     private final TagRepository tagRepository;
+    private final InventoryService inventoryService;
+    private final ProductCatalog productCatalog;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductFacetIndex productFacetIndex;
+    private final ProductSuggestService productSuggestService;
+    private final ProductQueryService productQueryService;
+
+    @Value("${search.max-results:200}")
+    private int maxSearchResults;
 
     @Autowired
     public ProductService(ProductRepository productRepository, 
                          BrandRepository brandRepository, 
                          ProductTypeRepository productTypeRepository,
-                         TagRepository tagRepository) {
+                         TagRepository tagRepository,
+                         InventoryService inventoryService,
+                         ProductCatalog productCatalog,
+                         ProductSearchIndex productSearchIndex,
+                         ProductFacetIndex productFacetIndex,
+                         ProductSuggestService productSuggestService,
+                         ProductQueryService productQueryService) {
         this.productRepository = productRepository;
         this.brandRepository = brandRepository;
         this.productTypeRepository = productTypeRepository;
         this.tagRepository = tagRepository;
+        this.inventoryService = inventoryService;
+        this.productCatalog = productCatalog;
+        this.productSearchIndex = productSearchIndex;
+        this.productFacetIndex = productFacetIndex;
+        this.productSuggestService = productSuggestService;
+        this.productQueryService = productQueryService;
     }
 
+    // Các hàm đọc danh mục dùng bản chụp trong bộ nhớ; chỉ đọc MongoDB khi bản chụp chưa được nạp
     public List<Product> getAllProducts() {
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot != null) {
+            return snapshot.getAll();
+        }
         return productRepository.findAll();
     }
 
     public Map<String, Object> getPagedProducts(int page, int size) {
-        Pageable paging = PageRequest.of(page, size);
-        Page<Product> pageProducts = productRepository.findAll(paging);
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("products", pageProducts.getContent());
-        result.put("currentPage", pageProducts.getNumber());
-        result.put("totalItems", pageProducts.getTotalElements());
-        result.put("totalPages", pageProducts.getTotalPages());
-        
-        return result;
+        return getPagedProducts(page, size, null, null, null, false);
+    }
+
+    /**
+     * Phân trang danh sách sản phẩm, sort là price, createdAt (newest), soldCount (bestSelling) hoặc discount.
+     * - cursor == null: phân trang theo số trang (định dạng cũ), totalItems là số ước lượng được cache
+     * - cursor != null: phân trang keyset, cursor rỗng là trang đầu, trả về nextCursor cho trang sau
+     */
+    public Map<String, Object> getPagedProducts(int page, int size, String cursor, String sort, String direction,
+                                                boolean includeTotal) {
+        return cursor != null
+                ? productQueryService.findAfterCursor(cursor, size, sort, direction, includeTotal)
+                : productQueryService.findPage(page, size, sort, direction);
     }
 
     public Product getProductById(String id) {
@@ -62,35 +96,85 @@ public class ProductService {
     }
 
     public List<Product> getProductsByBrand(String brandId) {
-        Optional<Brand> brand = brandRepository.findById(brandId);
-        if (brand.isPresent()) {
-            return productRepository.findByBrand(brand.get());
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot != null) {
+            return snapshot.getByBrand(brandId);
         }
-        return List.of();
+        return productRepository.findByBrand_Id(brandId);
     }
 
     public List<Product> getProductsByProductType(String productTypeId) {
-        Optional<ProductType> productType = productTypeRepository.findById(productTypeId);
-        if (productType.isPresent()) {
-            return productRepository.findByProductType(productType.get());
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot != null) {
+            return snapshot.getByProductType(productTypeId);
         }
-        return List.of();
+        return productRepository.findByProductType_Id(productTypeId);
     }
 
     public List<Product> getProductsByTag(String tagId) {
-        Optional<Tag> tag = tagRepository.findById(tagId);
-        if (tag.isPresent()) {
-            return productRepository.findByTagsContaining(tag.get());
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot != null) {
+            return snapshot.getByTag(tagId);
         }
-        return List.of();
+        return productRepository.findByTags_Id(tagId);
     }
 
+    // Tìm trong chỉ mục đảo (bỏ dấu, xếp hạng BM25); không có kết quả thì thử lại ở chế độ chấp nhận gõ sai
     public List<Product> searchProducts(String query) {
-        return productRepository.findByNameContainingIgnoreCase(query);
+        List<Product> products = searchProducts(query, false);
+        if (products.isEmpty() && productSearchIndex.isReady()) {
+            return searchProducts(query, true);
+        }
+        return products;
+    }
+
+    // Dùng truy vấn regex theo tên khi chỉ mục chưa sẵn sàng
+    public List<Product> searchProducts(String query, boolean fuzzy) {
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot == null || !productSearchIndex.isReady()) {
+            return productRepository.findByNameContainingIgnoreCase(query);
+        }
+        return productSearchIndex.search(query, maxSearchResults, fuzzy).stream()
+                .map(snapshot::getById)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Gợi ý tên sản phẩm, brand, loại sản phẩm cho ô tìm kiếm, hoàn toàn trong bộ nhớ
+    public List<ProductSuggestService.Suggestion> suggestProducts(String query, int limit) {
+        return productSuggestService.suggest(query, limit);
+    }
+
+    /**
+     * Lọc sản phẩm kết hợp brand, loại, tag, khoảng giá và còn hàng bằng chỉ mục bitmap, kèm số lượng theo từng facet
+     */
+    public Map<String, Object> filterProducts(FacetQuery query, int page, int size) {
+        CatalogSnapshot snapshot = productCatalog.current();
+        if (snapshot == null || !productFacetIndex.isReady()) {
+            throw new IllegalStateException("Product catalog is not loaded yet");
+        }
+
+        ProductFacetIndex.FacetResult result = productFacetIndex.filter(query);
+        List<String> ids = result.productIds();
+        int from = Math.min(page * size, ids.size());
+        int to = Math.min(from + size, ids.size());
+        List<Product> products = ids.subList(from, to).stream()
+                .map(snapshot::getById)
+                .filter(Objects::nonNull)
+                .toList();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("products", products);
+        response.put("currentPage", page);
+        response.put("totalItems", ids.size());
+        response.put("totalPages", (ids.size() + size - 1) / size);
+        response.put("facets", result.facets());
+        return response;
     }
 
     public Product createProduct(Product product) {
         product.setId(null);
+        refreshReferences(product);
         return productRepository.save(product);
     }
 
@@ -103,6 +187,7 @@ public class ProductService {
         if (existingProduct != null) {
             product.setId(id);
             product.setCreatedAt(existingProduct.getCreatedAt());
+            refreshReferences(product);
             return productRepository.save(product);
         }
 
@@ -128,43 +213,26 @@ public class ProductService {
     }
 
     public void applyDiscountToBrand(String brandId, double discountPercent) {
-        Optional<Brand> optionalBrand = brandRepository.findById(brandId);
-        if (optionalBrand.isPresent()) {
-            List<Product> products = productRepository.findByBrand(optionalBrand.get());
-            products.forEach(product -> product.setDiscountPercent(discountPercent));
-            productRepository.saveAll(products);
-        }
+        List<Product> products = productRepository.findByBrand_Id(brandId);
+        products.forEach(product -> product.setDiscountPercent(discountPercent));
+        productRepository.saveAll(products);
     }
 
     public void applyDiscountToProductType(String productTypeId, double discountPercent) {
-        Optional<ProductType> productTypeOptional = productTypeRepository.findById(productTypeId);
-        productTypeOptional.ifPresent(productType -> {
-            List<Product> products = productRepository.findByProductType(productType);
-            for (Product product : products) {
-                product.setDiscountPercent(discountPercent);
-                productRepository.save(product);
-            }
-        });
+        List<Product> products = productRepository.findByProductType_Id(productTypeId);
+        for (Product product : products) {
+            product.setDiscountPercent(discountPercent);
+            productRepository.save(product);
+        }
     }
 
     public void increaseQuantity(String productId, int quantity) {
-        Optional<Product> optionalProduct = productRepository.findById(productId);
-        if (optionalProduct.isPresent()) {
-            Product product = optionalProduct.get();
-            int newQuantity = product.getQuantity() + quantity;
-            product.setQuantity(newQuantity);
-            productRepository.save(product);
-        }
+        inventoryService.increase(productId, quantity);
     }
 
-    public void decreaseQuantity(String productId, int quantity) {
-        Optional<Product> optionalProduct = productRepository.findById(productId);
-        if (optionalProduct.isPresent()) {
-            Product product = optionalProduct.get();
-            int newQuantity = product.getQuantity() - quantity;
-            product.setQuantity(newQuantity);
-            productRepository.save(product);
-        }
+    // Trừ kho bằng một lệnh có điều kiện, trả về false nếu không đủ hàng
+    public boolean decreaseQuantity(String productId, int quantity) {
+        return inventoryService.tryDecrease(productId, quantity);
     }
 
     // Tag management methods
@@ -185,7 +253,7 @@ public class ProductService {
                 .anyMatch(t -> t.getId().equals(tagId));
         
         if (!tagExists) {
-            product.getTags().add(tag);
+            product.getTags().add(TagSnapshot.of(tag));
             return productRepository.save(product);
         }
         
@@ -207,6 +275,32 @@ public class ProductService {
         return productRepository.save(product);
     }
 
+    // Tag đầy đủ (mô tả, trạng thái) của sản phẩm, lấy từ collection tags theo id trong bản sao nhúng
+    public List<Tag> getProductTags(Product product) {
+        if (product.getTags() == null || product.getTags().isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> tagIds = product.getTags().stream().map(TagSnapshot::getId).toList();
+        Map<String, Tag> tags = new HashMap<>();
+        tagRepository.findAllById(tagIds).forEach(tag -> tags.put(tag.getId(), tag));
+        return tagIds.stream().map(tags::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    // Lấy lại tên/ảnh mới nhất cho brand, loại sản phẩm và tag từ id client gửi lên
+    private void refreshReferences(Product product) {
+        if (product.getBrand() != null && product.getBrand().getId() != null) {
+            product.setBrand(BrandSnapshot.of(brandRepository.findById(product.getBrand().getId()).orElse(null)));
+        }
+        if (product.getProductType() != null && product.getProductType().getId() != null) {
+            product.setProductType(ProductTypeSnapshot.of(
+                    productTypeRepository.findById(product.getProductType().getId()).orElse(null)));
+        }
+        if (product.getTags() != null && !product.getTags().isEmpty()) {
+            List<Tag> tags = getProductTags(product);
+            product.setTags(tags.stream().map(TagSnapshot::of).collect(Collectors.toList()));
+        }
+    }
+
     public int getProductCount() {
         return (int) productRepository.count();
     }
@@ -13,10 +13,12 @@ import java.util.stream.Collectors;
 public class ProductTypeService {
 
     private final ProductTypeRepository productTypeRepository;
+    private final ProductCategoryResolver productCategoryResolver;
 
     @Autowired
-    public ProductTypeService(ProductTypeRepository productTypeRepository) {
+    public ProductTypeService(ProductTypeRepository productTypeRepository, ProductCategoryResolver productCategoryResolver) {
         this.productTypeRepository = productTypeRepository;
+        this.productCategoryResolver = productCategoryResolver;
     }
 
     public List<ProductType> getAllProductTypes() {
@@ -29,7 +31,9 @@ public class ProductTypeService {
     }
 
     public ProductType createProductType(ProductType productType) {
-        return productTypeRepository.save(productType);
+        ProductType savedProductType = productTypeRepository.save(productType);
+        productCategoryResolver.invalidate();
+        return savedProductType;
     }
 
     public ProductType updateProductType(String id, ProductType productType) {
@@ -38,7 +42,9 @@ public class ProductTypeService {
         }
 
         productType.setId(id);
-        return productTypeRepository.save(productType);
+        ProductType savedProductType = productTypeRepository.save(productType);
+        productCategoryResolver.invalidate();
+        return savedProductType;
     }
 
     public boolean deleteProductType(String id) {
@@ -46,6 +52,7 @@ public class ProductTypeService {
             return false;
         }
         productTypeRepository.deleteById(id);
+        productCategoryResolver.invalidate();
         return true;
     }
 
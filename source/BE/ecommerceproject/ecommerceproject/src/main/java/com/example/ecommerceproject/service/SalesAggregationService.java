@@ -0,0 +1,372 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.CategorySalesData;
+import com.example.ecommerceproject.model.DailySales;
+import com.example.ecommerceproject.model.OrderStatus;
+import com.example.ecommerceproject.model.Product;
+import com.example.ecommerceproject.model.SalesLedger;
+import com.example.ecommerceproject.model.TimeBasedChartData;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Engine truy vấn thống kê dựa trên Mongo aggregation.
+ * Chỉ các con số đã tổng hợp được trả về qua mạng, không tải Order/OrderItem vào JVM.
+ * - Trên collection orders: tổng hợp doanh số các đơn DELIVERED theo ngày/sản phẩm (nguồn để dựng daily_sales)
+ * - Trên collection daily_sales: trả thẳng TimeBasedChartData/CategorySalesData, mỗi biểu đồ một round trip
+ */
+@Service
+public class SalesAggregationService {
+
+    private static final String ORDERS = "orders";
+    private static final String DAILY_SALES = "daily_sales";
+    private static final String PRODUCTS = "products";
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    // Khi dựng lại toàn bộ, các stage $group trên orders có thể vượt giới hạn bộ nhớ 100MB của MongoDB
+    private static final AggregationOptions DISK_USE = AggregationOptions.builder().allowDiskUse(true).build();
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public SalesAggregationService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // ---------- Orders ----------
+
+    /**
+     * Doanh thu, lợi nhuận, số lượng và số đơn DELIVERED theo ngày tạo trong khoảng [from, toExclusive).
+     * Lợi nhuận = tổng tiền đơn - giá vốn đã chụp trong OrderItem. Ngày không có đơn sẽ không có trong map.
+     */
+    public Map<LocalDate, DailySales> aggregateDeliveredSalesByDay(LocalDateTime from, LocalDateTime toExclusive) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(deliveredBetween(from, toExclusive)),
+                Aggregation.stage(new Document("$project", new Document("totalAmount", 1)
+                        .append("day", dayOf("$createdAt"))
+                        .append("quantity", new Document("$sum", "$items.quantity"))
+                        .append("cost", orderCost()))),
+                Aggregation.group("day")
+                        .sum("totalAmount").as("revenue")
+                        .sum("cost").as("cost")
+                        .sum("quantity").as("quantitySold")
+                        .count().as("orderCount")
+        ).withOptions(DISK_USE);
+
+        Map<LocalDate, DailySales> result = new LinkedHashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, ORDERS, Document.class)) {
+            LocalDate day = LocalDate.parse(row.getString("_id"));
+            DailySales dailySales = new DailySales(day);
+            dailySales.setRevenue(toDouble(row.get("revenue")));
+            dailySales.setProfit(dailySales.getRevenue() - toDouble(row.get("cost")));
+            dailySales.setQuantitySold(toInt(row.get("quantitySold")));
+            dailySales.setOrderCount(toInt(row.get("orderCount")));
+            result.put(day, dailySales);
+        }
+        return result;
+    }
+
+    /**
+     * Số lượng, doanh thu và giá vốn của từng sản phẩm theo ngày, chỉ tính đơn DELIVERED trong khoảng [from, toExclusive)
+     */
+    public List<ProductDailySales> aggregateDeliveredProductSalesByDay(LocalDateTime from, LocalDateTime toExclusive) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(deliveredBetween(from, toExclusive)),
+                Aggregation.unwind("items"),
+                Aggregation.stage(new Document("$project", new Document("_id", 0)
+                        .append("day", dayOf("$createdAt"))
+                        .append("productId", "$items.productId")
+                        .append("quantity", "$items.quantity")
+                        .append("revenue", new Document("$multiply", List.of("$items.price", "$items.quantity")))
+                        .append("cost", new Document("$multiply", List.of(unitCost("$items"), "$items.quantity"))))),
+                Aggregation.group("day", "productId")
+                        .sum("quantity").as("quantitySold")
+                        .sum("revenue").as("revenue")
+                        .sum("cost").as("cost")
+        ).withOptions(DISK_USE);
+
+        List<ProductDailySales> result = new ArrayList<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, ORDERS, Document.class)) {
+            Document key = row.get("_id", Document.class);
+            result.add(new ProductDailySales(
+                    LocalDate.parse(key.getString("day")),
+                    key.getString("productId"),
+                    toInt(row.get("quantitySold")),
+                    toDouble(row.get("revenue")),
+                    toDouble(row.get("cost"))
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * Số đơn DELIVERED khác nhau theo ngày và danh mục trong khoảng [from, toExclusive), đếm ngay trên MongoDB.
+     * Danh mục lấy từ productType nhúng trong products bằng $lookup theo _id (dùng index, không truyền danh sách
+     * sản phẩm vào pipeline); sản phẩm không còn tồn tại hoặc không có danh mục là unknownCategory.
+     * @return key "yyyy-MM-dd|tên danh mục" -> số đơn
+     */
+    public Map<String, Integer> countDeliveredOrdersByDayAndCategory(LocalDateTime from, LocalDateTime toExclusive,
+                                                                     String unknownCategory) {
+        // items.productId là chuỗi, _id của products là ObjectId (id không hợp lệ thì giữ nguyên chuỗi)
+        Document productId = new Document("$convert", new Document("input", "$items.productId")
+                .append("to", "objectId")
+                .append("onError", "$items.productId")
+                .append("onNull", null));
+        Document lookup = new Document("$lookup", new Document("from", PRODUCTS)
+                .append("let", new Document("productId", productId))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("$expr", new Document("$eq", List.of("$_id", "$$productId")))),
+                        new Document("$project", new Document("_id", 0).append("productType.name", 1))))
+                .append("as", "product"));
+        Document category = new Document("$ifNull", List.of(
+                new Document("$arrayElemAt", List.of("$product.productType.name", 0)), unknownCategory));
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(deliveredBetween(from, toExclusive)),
+                Aggregation.unwind("items"),
+                Aggregation.stage(lookup),
+                Aggregation.stage(new Document("$project", new Document("_id", 0)
+                        .append("day", dayOf("$createdAt"))
+                        .append("category", category)
+                        .append("orderId", "$_id"))),
+                // Gom (ngày, danh mục, đơn) trước để mỗi đơn chỉ được đếm một lần trong một danh mục
+                Aggregation.stage(new Document("$group", new Document("_id", new Document("day", "$day")
+                        .append("category", "$category")
+                        .append("orderId", "$orderId")))),
+                Aggregation.stage(new Document("$group", new Document("_id", new Document("day", "$_id.day")
+                        .append("category", "$_id.category"))
+                        .append("orderCount", new Document("$sum", 1))))
+        ).withOptions(DISK_USE);
+
+        Map<String, Integer> result = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, ORDERS, Document.class)) {
+            Document key = row.get("_id", Document.class);
+            result.put(key.getString("day") + "|" + key.getString("category"), toInt(row.get("orderCount")));
+        }
+        return result;
+    }
+
+    /**
+     * Tổng doanh thu, lợi nhuận, số lượng và số đơn của các đơn đang được tính vào sổ cái (countedInLedger),
+     * dùng để đối soát sổ cái
+     */
+    public SalesLedger aggregateLedgerTotals() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("countedInLedger").is(true)),
+                Aggregation.stage(new Document("$project", new Document("totalAmount", 1)
+                        .append("quantity", new Document("$sum", "$items.quantity"))
+                        .append("cost", orderCost()))),
+                Aggregation.group()
+                        .sum("totalAmount").as("revenue")
+                        .sum("cost").as("cost")
+                        .sum("quantity").as("quantitySold")
+                        .count().as("orderCount")
+        );
+
+        SalesLedger ledger = new SalesLedger();
+        Document row = mongoTemplate.aggregate(aggregation, ORDERS, Document.class).getUniqueMappedResult();
+        if (row != null) {
+            ledger.setRevenue(toDouble(row.get("revenue")));
+            ledger.setProfit(ledger.getRevenue() - toDouble(row.get("cost")));
+            ledger.setQuantitySold(toLong(row.get("quantitySold")));
+            ledger.setOrderCount(toLong(row.get("orderCount")));
+        }
+        return ledger;
+    }
+
+    // ---------- Daily sales rollup ----------
+
+    /**
+     * Doanh thu, lợi nhuận và số lượng theo ngày trong khoảng [startDate, endDate], ngày trống được điền 0.
+     * Một truy vấn dùng chung cho cả biểu đồ doanh thu/lợi nhuận lẫn biểu đồ số lượng.
+     */
+    public List<TimeBasedChartData> getDailyTotals(LocalDate startDate, LocalDate endDate) {
+        Map<String, TimeBasedChartData> rows = aggregateRollupByDay(startDate, endDate);
+
+        List<TimeBasedChartData> result = new ArrayList<>();
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            result.add(totalsOrZero(date.format(DAY_FORMATTER), rows));
+        }
+        return result;
+    }
+
+    // Doanh thu, lợi nhuận và số lượng theo tháng từ startMonth tới endMonth
+    public List<TimeBasedChartData> getMonthlyTotals(YearMonth startMonth, YearMonth endMonth) {
+        Map<String, TimeBasedChartData> rows = aggregateRollupByMonth(startMonth, endMonth);
+
+        List<TimeBasedChartData> result = new ArrayList<>();
+        for (YearMonth month = startMonth; !month.isAfter(endMonth); month = month.plusMonths(1)) {
+            result.add(totalsOrZero(month.format(MONTH_FORMATTER), rows));
+        }
+        return result;
+    }
+
+    // Doanh thu và lợi nhuận theo ngày trong khoảng [startDate, endDate], ngày trống được điền 0
+    public List<TimeBasedChartData> getDailyRevenueAndProfit(LocalDate startDate, LocalDate endDate) {
+        return toRevenueAndProfitSeries(getDailyTotals(startDate, endDate));
+    }
+
+    // Số lượng bán theo ngày trong khoảng [startDate, endDate]
+    public List<TimeBasedChartData> getDailyQuantitySold(LocalDate startDate, LocalDate endDate) {
+        return toQuantitySoldSeries(getDailyTotals(startDate, endDate));
+    }
+
+    // Doanh thu và lợi nhuận theo tháng từ startMonth tới endMonth
+    public List<TimeBasedChartData> getMonthlyRevenueAndProfit(YearMonth startMonth, YearMonth endMonth) {
+        return toRevenueAndProfitSeries(getMonthlyTotals(startMonth, endMonth));
+    }
+
+    // Số lượng bán theo tháng từ startMonth tới endMonth
+    public List<TimeBasedChartData> getMonthlyQuantitySold(YearMonth startMonth, YearMonth endMonth) {
+        return toQuantitySoldSeries(getMonthlyTotals(startMonth, endMonth));
+    }
+
+    // Tách chuỗi tổng hợp thành biểu đồ doanh thu/lợi nhuận (quantitySold = null như định dạng cũ)
+    public static List<TimeBasedChartData> toRevenueAndProfitSeries(List<TimeBasedChartData> totals) {
+        return totals.stream()
+                .map(row -> new TimeBasedChartData(row.getTimePeriod(), row.getRevenue(), row.getProfit(), null))
+                .toList();
+    }
+
+    // Tách chuỗi tổng hợp thành biểu đồ số lượng bán (revenue/profit = null như định dạng cũ)
+    public static List<TimeBasedChartData> toQuantitySoldSeries(List<TimeBasedChartData> totals) {
+        return totals.stream()
+                .map(row -> new TimeBasedChartData(row.getTimePeriod(), null, null, row.getQuantitySold()))
+                .toList();
+    }
+
+    // Số lượng bán theo danh mục trong khoảng [startDate, endDate]
+    public List<CategorySalesData> getCategorySales(LocalDate startDate, LocalDate endDate) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(dayRange(startDate, endDate)),
+                Aggregation.unwind("categories"),
+                Aggregation.group("categories.categoryName").sum("categories.quantitySold").as("totalQuantitySold"),
+                Aggregation.project("totalQuantitySold").and("_id").as("categoryName").andExclude("_id"),
+                Aggregation.sort(Sort.Direction.ASC, "categoryName")
+        );
+
+        return mongoTemplate.aggregate(aggregation, DAILY_SALES, CategorySalesData.class).getMappedResults();
+    }
+
+    private Map<String, TimeBasedChartData> aggregateRollupByDay(LocalDate startDate, LocalDate endDate) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(dayRange(startDate, endDate)),
+                Aggregation.project("revenue", "profit", "quantitySold").and("_id").as("timePeriod").andExclude("_id")
+        );
+
+        return toMap(mongoTemplate.aggregate(aggregation, DAILY_SALES, TimeBasedChartData.class).getMappedResults());
+    }
+
+    private Map<String, TimeBasedChartData> aggregateRollupByMonth(YearMonth startMonth, YearMonth endMonth) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(dayRange(startMonth.atDay(1), endMonth.atEndOfMonth())),
+                Aggregation.project("revenue", "profit", "quantitySold")
+                        .and(StringOperators.Substr.valueOf("_id").substring(0, 7)).as("month"),
+                Aggregation.group("month")
+                        .sum("revenue").as("revenue")
+                        .sum("profit").as("profit")
+                        .sum("quantitySold").as("quantitySold"),
+                Aggregation.project("revenue", "profit", "quantitySold").and("_id").as("timePeriod").andExclude("_id")
+        );
+
+        return toMap(mongoTemplate.aggregate(aggregation, DAILY_SALES, TimeBasedChartData.class).getMappedResults());
+    }
+
+    private TimeBasedChartData totalsOrZero(String timePeriod, Map<String, TimeBasedChartData> rows) {
+        TimeBasedChartData row = rows.get(timePeriod);
+        return new TimeBasedChartData(timePeriod,
+                row != null && row.getRevenue() != null ? row.getRevenue() : 0.0,
+                row != null && row.getProfit() != null ? row.getProfit() : 0.0,
+                row != null && row.getQuantitySold() != null ? row.getQuantitySold() : 0);
+    }
+
+    private Map<String, TimeBasedChartData> toMap(List<TimeBasedChartData> rows) {
+        Map<String, TimeBasedChartData> result = new HashMap<>();
+        rows.forEach(row -> result.put(row.getTimePeriod(), row));
+        return result;
+    }
+
+    // _id của daily_sales có dạng yyyy-MM-dd nên lọc theo chuỗi là đủ
+    private Criteria dayRange(LocalDate startDate, LocalDate endDate) {
+        return Criteria.where("_id").gte(startDate.format(DAY_FORMATTER)).lte(endDate.format(DAY_FORMATTER));
+    }
+
+    // from/toExclusive bằng null nghĩa là không giới hạn (dùng khi dựng lại toàn bộ rollup)
+    private Criteria deliveredBetween(LocalDateTime from, LocalDateTime toExclusive) {
+        Criteria criteria = Criteria.where("status").is(OrderStatus.DELIVERED.name());
+        if (from != null && toExclusive != null) {
+            criteria.and("createdAt").gte(from).lt(toExclusive);
+        } else if (from != null) {
+            criteria.and("createdAt").gte(from);
+        } else if (toExclusive != null) {
+            criteria.and("createdAt").lt(toExclusive);
+        }
+        return criteria;
+    }
+
+    // LocalDateTime được lưu theo múi giờ của JVM, nên phải cắt ngày theo đúng múi giờ đó
+    private Document dayOf(String fieldExpression) {
+        return new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                .append("date", fieldExpression)
+                .append("timezone", ZoneId.systemDefault().getId()));
+    }
+
+    // Tổng giá vốn của một đơn: sum(costPrice * quantity) trên các dòng hàng
+    private Document orderCost() {
+        Document lineCost = new Document("$multiply", List.of(unitCost("$$item"), "$$item.quantity"));
+        return new Document("$sum", new Document("$map", new Document("input", "$items")
+                .append("as", "item")
+                .append("in", lineCost)));
+    }
+
+    // Giá vốn một đơn vị; dòng hàng chưa có costPrice thì ước tính theo biên lợi nhuận mặc định (như OrderItem)
+    private Document unitCost(String item) {
+        return new Document("$ifNull", List.of(item + ".costPrice",
+                new Document("$multiply", List.of(item + ".price", 1 - Product.DEFAULT_MARGIN_RATE))));
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : 0.0;
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    /**
+     * Doanh số của một sản phẩm trong một ngày
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ProductDailySales {
+        private final LocalDate day;
+        private final String productId;
+        private final int quantitySold;
+        private final double revenue;
+        private final double cost;
+    }
+}
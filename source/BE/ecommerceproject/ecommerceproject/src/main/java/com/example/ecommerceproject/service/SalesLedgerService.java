@@ -0,0 +1,257 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderItem;
+import com.example.ecommerceproject.model.OrderStatus;
+import com.example.ecommerceproject.model.SalesLedger;
+import com.example.ecommerceproject.repository.SalesLedgerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quản lý sổ cái doanh số (sales_ledger) cho các chỉ số tổng trên trang tổng quan.
+ * - Đơn hàng vào DELIVERED: cộng vào sổ cái bằng $inc; rời DELIVERED: trừ đi
+ * - Mỗi đơn có cờ countedInLedger, được đổi bằng update có điều kiện trước khi $inc: một đơn chỉ được cộng/trừ
+ *   đúng một lần dù sự kiện bị phát lại hay đến sau lần đối soát
+ * - Định kỳ đối soát lại từ collection orders để sửa sai lệch (ví dụ sự kiện bị lỗi giữa chừng)
+ */
+@Service
+public class SalesLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalesLedgerService.class);
+
+    private static final int MAX_RECONCILE_ATTEMPTS = 5;
+    // Cờ vừa đổi quá thời gian này mà chưa được xóa đánh dấu coi như lệnh $inc đã lỗi, đối soát tính theo cờ
+    private static final long PENDING_LEASE_MS = 60_000;
+    private static final long PENDING_WAIT_MS = 500;
+
+    private final SalesLedgerRepository salesLedgerRepository;
+    private final SalesAggregationService salesAggregationService;
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public SalesLedgerService(SalesLedgerRepository salesLedgerRepository,
+                              SalesAggregationService salesAggregationService,
+                              MongoTemplate mongoTemplate) {
+        this.salesLedgerRepository = salesLedgerRepository;
+        this.salesAggregationService = salesAggregationService;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Gộp mọi thay đổi trong sự kiện thành một lệnh $inc duy nhất, chỉ gồm các đơn đổi được cờ countedInLedger
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        double revenue = 0;
+        double profit = 0;
+        long quantitySold = 0;
+        long orderCount = 0;
+        List<String> flipped = new ArrayList<>();
+
+        try {
+            for (OrderStatusChangedEvent.Change change : event.getChanges()) {
+                int sign = deliveredDelta(change);
+                if (sign == 0) {
+                    continue;
+                }
+
+                Order order = change.getOrder();
+                if (!flipCounted(order.getId(), sign > 0)) {
+                    // Đơn đã được tính (hoặc đã bị trừ) bởi sự kiện khác hoặc lần đối soát trước
+                    continue;
+                }
+                flipped.add(order.getId());
+
+                double cost = order.getItems().stream().mapToDouble(item -> item.costPriceOrDefault() * item.getQuantity()).sum();
+                revenue += sign * order.getTotalAmount();
+                profit += sign * (order.getTotalAmount() - cost);
+                quantitySold += sign * order.getItems().stream().mapToLong(OrderItem::getQuantity).sum();
+                orderCount += sign;
+            }
+
+            if (flipped.isEmpty()) {
+                return;
+            }
+
+            Update update = new Update()
+                    .inc("revenue", revenue)
+                    .inc("profit", profit)
+                    .inc("quantitySold", quantitySold)
+                    .inc("orderCount", orderCount)
+                    .inc("version", 1)
+                    .set("updatedAt", LocalDateTime.now());
+            mongoTemplate.upsert(ledgerQuery(), update, SalesLedger.class);
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(flipped)),
+                    new Update().unset("ledgerPendingSince"), Order.class);
+        } catch (Exception e) {
+            // Đánh dấu ledgerPendingSince còn lại sẽ hết hạn và lần đối soát tiếp theo tính lại theo cờ
+            logger.error("Không thể cập nhật sales_ledger, số liệu sẽ được sửa ở lần đối soát tiếp theo", e);
+        }
+    }
+
+    // Khởi tạo sổ cái ở lần chạy đầu tiên, hoặc khi còn đơn DELIVERED tạo trước khi có cờ countedInLedger
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeLedger() {
+        try {
+            boolean unflagged = mongoTemplate.exists(new Query(Criteria.where("status").is(OrderStatus.DELIVERED)
+                    .and("countedInLedger").exists(false)), Order.class);
+            if (!salesLedgerRepository.existsById(SalesLedger.GLOBAL_ID) || unflagged) {
+                logger.info("sales_ledger chưa tồn tại hoặc còn đơn chưa gắn cờ, dựng lại từ collection orders");
+                reconcile();
+            }
+        } catch (Exception e) {
+            logger.error("Không thể khởi tạo sales_ledger", e);
+        }
+    }
+
+    @Scheduled(cron = "${sales.ledger.reconcile-cron:0 0 3 * * *}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            logger.error("Đối soát sales_ledger thất bại", e);
+        }
+    }
+
+    /**
+     * Đồng bộ cờ countedInLedger với trạng thái đơn, tính lại sổ cái từ các đơn có cờ rồi ghi đè bản ghi hiện tại.
+     * - Chỉ ghi khi version chưa đổi kể từ lúc đọc (trước khi aggregate): $inc xen vào thì đọc và aggregate lại
+     * - Đơn vừa đổi cờ mà $inc chưa chạy xong (ledgerPendingSince còn hạn) có thể đã nằm trong kết quả aggregate
+     *   trong khi $inc sẽ đến sau lần ghi: khi còn đơn như vậy thì chờ rồi thử lại, để không tính một đơn hai lần
+     */
+    public SalesLedger reconcile() {
+        for (int attempt = 1; attempt <= MAX_RECONCILE_ATTEMPTS; attempt++) {
+            SalesLedger current = salesLedgerRepository.findById(SalesLedger.GLOBAL_ID).orElse(null);
+            LocalDateTime leaseStart = LocalDateTime.now().minusNanos(PENDING_LEASE_MS * 1_000_000);
+            syncCountedFlags(leaseStart);
+            SalesLedger ledger = salesAggregationService.aggregateLedgerTotals();
+
+            if (mongoTemplate.exists(new Query(Criteria.where("ledgerPendingSince").gt(leaseStart)), Order.class)) {
+                logger.debug("Còn đơn đang cập nhật sales_ledger, thử lại lần {}", attempt + 1);
+                sleepBeforeRetry();
+                continue;
+            }
+
+            if (current != null && (Math.abs(current.getRevenue() - ledger.getRevenue()) > 0.01
+                    || current.getOrderCount() != ledger.getOrderCount())) {
+                logger.warn("sales_ledger lệch so với orders: {} đơn/{} -> {} đơn/{}",
+                        current.getOrderCount(), current.getRevenue(), ledger.getOrderCount(), ledger.getRevenue());
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            Update update = new Update()
+                    .set("revenue", ledger.getRevenue())
+                    .set("profit", ledger.getProfit())
+                    .set("quantitySold", ledger.getQuantitySold())
+                    .set("orderCount", ledger.getOrderCount())
+                    .inc("version", 1)
+                    .set("updatedAt", now)
+                    .set("reconciledAt", now);
+            SalesLedger saved = writeIfUnchanged(current, update);
+            if (saved != null) {
+                // Đánh dấu đã hết hạn không còn ý nghĩa: số liệu của các đơn đó vừa được tính lại theo cờ
+                mongoTemplate.updateMulti(new Query(Criteria.where("ledgerPendingSince").lte(leaseStart)),
+                        new Update().unset("ledgerPendingSince"), Order.class);
+                return saved;
+            }
+            logger.debug("sales_ledger thay đổi trong lúc đối soát, thử lại lần {}", attempt + 1);
+        }
+        throw new IllegalStateException("sales_ledger liên tục thay đổi, bỏ qua lần đối soát này");
+    }
+
+    /**
+     * Đổi cờ countedInLedger của đơn nếu trạng thái hiện tại trong DB khớp (vào DELIVERED: cờ đang tắt, rời DELIVERED:
+     * cờ đang bật) và đánh dấu ledgerPendingSince cho tới khi $inc xong
+     * @return false nếu đơn đã ở đúng trạng thái cờ, tức là đã được tính hoặc trừ trước đó
+     */
+    private boolean flipCounted(String orderId, boolean counted) {
+        Criteria criteria = Criteria.where("_id").is(orderId);
+        if (counted) {
+            criteria.and("status").is(OrderStatus.DELIVERED).and("countedInLedger").ne(true);
+        } else {
+            criteria.and("status").ne(OrderStatus.DELIVERED).and("countedInLedger").is(true);
+        }
+        Update update = new Update().set("countedInLedger", counted).set("ledgerPendingSince", LocalDateTime.now());
+        return mongoTemplate.updateFirst(new Query(criteria), update, Order.class).getMatchedCount() > 0;
+    }
+
+    /**
+     * Sửa cờ của các đơn lệch với trạng thái (đơn cũ chưa có cờ, sự kiện bị lỗi...), bỏ qua đơn đang được cập nhật.
+     * Sự kiện đến sau đó sẽ thấy cờ đã đúng và không $inc nữa.
+     */
+    private void syncCountedFlags(LocalDateTime leaseStart) {
+        Criteria notPending = new Criteria().orOperator(
+                Criteria.where("ledgerPendingSince").exists(false),
+                Criteria.where("ledgerPendingSince").lte(leaseStart));
+        mongoTemplate.updateMulti(new Query(new Criteria().andOperator(notPending,
+                        Criteria.where("status").is(OrderStatus.DELIVERED), Criteria.where("countedInLedger").ne(true))),
+                new Update().set("countedInLedger", true), Order.class);
+        mongoTemplate.updateMulti(new Query(new Criteria().andOperator(notPending,
+                        Criteria.where("status").ne(OrderStatus.DELIVERED), Criteria.where("countedInLedger").is(true))),
+                new Update().set("countedInLedger", false), Order.class);
+    }
+
+    // Ghi số liệu đối soát nếu sổ cái chưa đổi kể từ lúc đọc; null nếu đã có lệnh khác ghi xen vào
+    private SalesLedger writeIfUnchanged(SalesLedger current, Update update) {
+        if (current == null) {
+            try {
+                // Chưa có sổ cái: upsert chỉ tạo mới nếu chưa ai tạo trong lúc aggregate
+                mongoTemplate.upsert(new Query(Criteria.where("_id").is(SalesLedger.GLOBAL_ID).and("version").exists(false)),
+                        update, SalesLedger.class);
+                return getLedger();
+            } catch (DuplicateKeyException e) {
+                return null;
+            }
+        }
+
+        // Sổ cái tạo trước khi có trường version được đọc ra với version = 0
+        Criteria version = current.getVersion() == 0
+                ? Criteria.where("version").in(0L, null)
+                : Criteria.where("version").is(current.getVersion());
+        Query guarded = new Query(Criteria.where("_id").is(SalesLedger.GLOBAL_ID).andOperator(version));
+        return mongoTemplate.findAndModify(guarded, update, FindAndModifyOptions.options().returnNew(true), SalesLedger.class);
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(PENDING_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Đối soát sales_ledger bị gián đoạn", e);
+        }
+    }
+
+    // Đọc một bản ghi duy nhất, không phụ thuộc số lượng đơn hàng
+    public SalesLedger getLedger() {
+        return salesLedgerRepository.findById(SalesLedger.GLOBAL_ID).orElseGet(SalesLedger::new);
+    }
+
+    // +1 khi đơn vào DELIVERED, -1 khi rời DELIVERED, 0 nếu không ảnh hưởng
+    private int deliveredDelta(OrderStatusChangedEvent.Change change) {
+        boolean wasDelivered = change.getPreviousStatus() == OrderStatus.DELIVERED;
+        boolean isDelivered = change.getOrder().getStatus() == OrderStatus.DELIVERED;
+        if (isDelivered == wasDelivered) {
+            return 0;
+        }
+        return isDelivered ? 1 : -1;
+    }
+
+    private Query ledgerQuery() {
+        return new Query(Criteria.where("_id").is(SalesLedger.GLOBAL_ID));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.event.OrderStatusChangedEvent;
+import com.example.ecommerceproject.model.StatisticsData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả StatisticsData theo (loại kỳ, tham số đã chuẩn hóa).
+ * - Entry không hết hạn theo thời gian; kỳ đã qua hoàn toàn chỉ bị xóa khi có đơn hàng thuộc kỳ đó đổi trạng thái
+ * - Khi đơn hàng được tạo/đổi trạng thái, xóa mọi entry có khoảng ngày chứa ngày tạo của đơn
+ * - Giới hạn số entry (LRU) vì khoảng ngày tùy chọn và kỳ "tuần" trượt theo ngày
+ */
+@Component
+public class StatisticsCache {
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Tăng mỗi lần xóa entry, dùng để bỏ kết quả được tính trong lúc đang có thay đổi
+    private long invalidationVersion;
+
+    public StatisticsCache(@Value("${statistics.cache.max-entries:500}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > StatisticsCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Lấy kết quả từ cache hoặc tính mới bằng loader.
+     * @param key       loại kỳ và tham số, ví dụ "monthly:2024-05"
+     * @param startDate ngày đầu của khoảng dữ liệu mà kết quả phụ thuộc
+     * @param endDate   ngày cuối (tính cả ngày này)
+     */
+    public StatisticsData get(String key, LocalDate startDate, LocalDate endDate, Supplier<StatisticsData> loader) {
+        long version;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.data();
+            }
+            version = invalidationVersion;
+        }
+
+        misses.incrementAndGet();
+        StatisticsData data = loader.get();
+
+        synchronized (this) {
+            if (version == invalidationVersion) {
+                entries.put(key, new Entry(startDate, endDate, data));
+            }
+        }
+        return data;
+    }
+
+    // DailySalesService tính lại rollup trên luồng nền và xóa các entry này một lần nữa sau khi ghi xong,
+    // nên entry được dựng từ rollup cũ trong khoảng giữa cũng không được giữ lại
+    @EventListener
+    @Order(100)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        Set<LocalDate> affectedDays = new HashSet<>();
+        for (OrderStatusChangedEvent.Change change : event.getChanges()) {
+            if (change.getOrder().getCreatedAt() != null) {
+                affectedDays.add(change.getOrder().getCreatedAt().toLocalDate());
+            }
+        }
+        affectedDays.forEach(this::evictCovering);
+    }
+
+    // Xóa các entry có khoảng ngày chứa day
+    public synchronized void evictCovering(LocalDate day) {
+        invalidationVersion++;
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.covers(day));
+        evictions.addAndGet(before - entries.size());
+    }
+
+    public synchronized void clear() {
+        invalidationVersion++;
+        evictions.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("evictions", evictions.get());
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        return stats;
+    }
+
+    private record Entry(LocalDate startDate, LocalDate endDate, StatisticsData data) {
+        boolean covers(LocalDate day) {
+            return !day.isBefore(startDate) && !day.isAfter(endDate);
+        }
+    }
+}
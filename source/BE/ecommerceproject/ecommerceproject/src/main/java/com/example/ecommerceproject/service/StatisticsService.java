@@ -1,37 +1,46 @@
 package com.example.ecommerceproject.service;
 
 import com.example.ecommerceproject.model.*;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+/**
+ * Thống kê doanh số cho trang quản trị.
+ * Mọi số liệu được đọc từ rollup daily_sales qua SalesAggregationService: mỗi biểu đồ là
+ * một aggregation duy nhất và chỉ các con số đã tổng hợp được trả về từ MongoDB.
+ */
 @Service
 public class StatisticsService {
 
-    private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-    private final UserService userService;
-    private final OrderService orderService;
-    private final ProductService productService;
+    private final SalesAggregationService salesAggregationService;
+    private final DailySalesService dailySalesService;
+    private final SalesLedgerService salesLedgerService;
     private final ProductTypeService productTypeService;
+    private final StatisticsTaskRunner statisticsTaskRunner;
+    private final StatisticsCache statisticsCache;
 
     @Autowired
-    public StatisticsService(UserService userService, OrderService orderService, ProductService productService, ProductTypeService productTypeService) {
-        this.userService = userService;
-        this.orderService = orderService;
-        this.productService = productService;
+    public StatisticsService(SalesAggregationService salesAggregationService, DailySalesService dailySalesService,
+                             SalesLedgerService salesLedgerService, ProductTypeService productTypeService,
+                             StatisticsTaskRunner statisticsTaskRunner, StatisticsCache statisticsCache) {
+        this.salesAggregationService = salesAggregationService;
+        this.dailySalesService = dailySalesService;
+        this.salesLedgerService = salesLedgerService;
         this.productTypeService = productTypeService;
+        this.statisticsTaskRunner = statisticsTaskRunner;
+        this.statisticsCache = statisticsCache;
     }
 
     // ---------- Start of Daily ----------
@@ -44,45 +53,17 @@ public class StatisticsService {
 
     // Lấy dữ liệu doanh thu và lợi nhuận trong khoảng thời gian (phân theo ngày)
     public List<TimeBasedChartData> getDateRangeRevenueAndProfitData(LocalDate startDate, LocalDate endDate) {
-        List<TimeBasedChartData> result = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String formattedDate = date.format(formatter);
-
-            Double revenue = orderService.getRevenueByDate(date);
-            Double profit = orderService.getProfitByDate(date);
-
-            result.add(new TimeBasedChartData(formattedDate, revenue, profit, null));
-        }
-
-        return result;
+        return salesAggregationService.getDailyRevenueAndProfit(startDate, endDate);
     }
 
     // Lấy dữ liệu số lượng sản phẩm bán trong khoảng thời gian (phân theo ngày)
     public List<TimeBasedChartData> getDateRangeQuantitySoldData(LocalDate startDate, LocalDate endDate) {
-        List<TimeBasedChartData> result = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String formattedDate = date.format(formatter);
-
-            Integer quantitySold = orderService.getQuantitySoldByDate(date);
-
-            result.add(new TimeBasedChartData(formattedDate, null, null, quantitySold));
-        }
-
-        return result;
+        return salesAggregationService.getDailyQuantitySold(startDate, endDate);
     }
 
     // Lấy dữ liệu bán hàng theo danh mục trong khoảng thời gian
     public List<CategorySalesData> getDateRangeCategorySalesData(LocalDate startDate, LocalDate endDate) {
-        LocalDateTime startDateTime = startDate.atStartOfDay();
-        LocalDateTime endDateTime = endDate.plusDays(1).atStartOfDay().minusNanos(1); // End of the day
-
-        List<Order> orders = orderService.getOrdersBetweenDates(startDateTime, endDateTime);
-
-        return calculateCategorySalesData(orders);
+        return salesAggregationService.getCategorySales(startDate, endDate);
     }
 
     // Phương thức tổng hợp để lấy tất cả dữ liệu thống kê trong khoảng thời gian
@@ -94,9 +75,8 @@ public class StatisticsService {
             startDate = LocalDate.now().minusDays(1);
             endDate = LocalDate.now().plusDays(1);
         } else {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            startDate = LocalDate.parse(startDateString, formatter);
-            endDate = LocalDate.parse(endDateString, formatter);
+            startDate = LocalDate.parse(startDateString, DAY_FORMATTER);
+            endDate = LocalDate.parse(endDateString, DAY_FORMATTER);
         }
 
         if (startDate.isAfter(endDate)) {
@@ -108,11 +88,11 @@ public class StatisticsService {
             endDate = endDate.plusDays(1);
         }
 
-        List<TimeBasedChartData> timeSeriesRevenueProfitData = getDateRangeRevenueAndProfitData(startDate, endDate);
-        List<TimeBasedChartData> timeSeriesQuantityData = getDateRangeQuantitySoldData(startDate, endDate);
-        List<CategorySalesData> categorySalesRatio = getDateRangeCategorySalesData(startDate, endDate);
-
-        return new StatisticsData(timeSeriesRevenueProfitData, timeSeriesQuantityData, categorySalesRatio);
+        LocalDate from = startDate;
+        LocalDate to = endDate;
+        return statisticsCache.get("dateRange:" + from + ":" + to, from, to, () -> buildStatisticsData(
+                () -> salesAggregationService.getDailyTotals(from, to),
+                () -> getDateRangeCategorySalesData(from, to)));
     }
 
     // ---------- End of DateRange ----------
@@ -121,84 +101,45 @@ public class StatisticsService {
 
     // Lấy dữ liệu doanh thu và lợi nhuận theo tuần
     public List<TimeBasedChartData> getWeeklyRevenueAndProfitData() {
-        List<TimeBasedChartData> result = new ArrayList<>();
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7 - 1);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String formattedDate = date.format(formatter);
 
-            Double revenue = orderService.getRevenueByDate(date);
-            Double profit = orderService.getProfitByDate(date);
-
-            result.add(new TimeBasedChartData(formattedDate, revenue, profit, null));
-        }
-
-        return result;
+        return salesAggregationService.getDailyRevenueAndProfit(startDate, endDate);
     }
 
     // Lấy dữ liệu số lượng bán theo tuần
     public List<TimeBasedChartData> getWeeklyQuantitySoldData() {
-        List<TimeBasedChartData> result = new ArrayList<>();
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7 - 1);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String formattedDate = date.format(formatter);
 
-            Integer quantitySold = orderService.getQuantitySoldByDate(date);
-
-            result.add(new TimeBasedChartData(formattedDate, null, null, quantitySold));
-        }
-
-        return result;
+        return salesAggregationService.getDailyQuantitySold(startDate, endDate);
     }
 
-    // Lấy dữ liệu bán theo danh mục trong tuần
+    // Lấy dữ liệu bán theo danh mục trong tuần (kể cả danh mục không bán được sản phẩm nào)
     public List<CategorySalesData> getWeeklyCategorySalesData() {
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(7 - 1);
 
-        List<CategorySalesData> result = new ArrayList<>();
-
-        List<String> categories = productTypeService.getAllProductTypeNames();
-
-        for (String category : categories) {
-            List<Order> ordersInRange = orderService.getOrdersCreatedBetweenDates(startDate, endDate)
-                    .stream()
-                    .filter(order -> order.getStatus() == OrderStatus.DELIVERED)
-                    .toList();
-
-            int quantitySold = 0;
-            double revenue = 0;
-
-            for (Order order : ordersInRange) {
-                for (OrderItem item : order.getItems()) {
-                    Product product = productService.getProductById(item.getProductId());
-                    if (product.getProductType().getName().equals(category)) {
-                        quantitySold += item.getQuantity();
-                        revenue += item.getPrice() * item.getQuantity();
-                    }
-                }
-            }
-
-            CategorySalesData categoryData = new CategorySalesData();
-            categoryData.setCategoryName(category);
-            categoryData.setTotalQuantitySold(quantitySold);
-            result.add(categoryData);
+        Map<String, Integer> quantityByCategory = new LinkedHashMap<>();
+        for (String category : productTypeService.getAllProductTypeNames()) {
+            quantityByCategory.put(category, 0);
+        }
+        for (CategorySalesData categorySales : getDateRangeCategorySalesData(startDate, endDate)) {
+            quantityByCategory.merge(categorySales.getCategoryName(), categorySales.getTotalQuantitySold(), Integer::sum);
         }
 
-        return result;
+        return quantityByCategory.entrySet().stream()
+                .map(entry -> new CategorySalesData(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
     }
 
     public StatisticsData getWeeklyStatisticsData() {
-        List<TimeBasedChartData> timeSeriesRevenueProfitData = getWeeklyRevenueAndProfitData();
-        List<TimeBasedChartData> timeSeriesQuantityData = getWeeklyQuantitySoldData();
-        List<CategorySalesData> categorySalesRatio = getWeeklyCategorySalesData();
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = endDate.minusDays(7 - 1);
 
-        return new StatisticsData(timeSeriesRevenueProfitData, timeSeriesQuantityData, categorySalesRatio);
+        return statisticsCache.get("weekly:" + startDate, startDate, endDate, () -> buildStatisticsData(
+                () -> salesAggregationService.getDailyTotals(startDate, endDate),
+                this::getWeeklyCategorySalesData));
     }
 
     // ---------- End of Weekly ----------
@@ -207,49 +148,27 @@ public class StatisticsService {
 
     // Lấy dữ liệu doanh thu và lợi nhuận theo tháng
     public List<TimeBasedChartData> getMonthlyRevenueAndProfitData(int month, int year) {
-        List<TimeBasedChartData> result = new ArrayList<>();
         YearMonth yearMonth = YearMonth.of(year, month);
-        int daysInMonth = yearMonth.lengthOfMonth();
-
-        for (int day = 1; day <= daysInMonth; day++) {
-            LocalDate date = LocalDate.of(year, month, day);
-            String formattedDate = date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        LocalDate startDate = yearMonth.atDay(1);
+        LocalDate endDate = yearMonth.atEndOfMonth();
 
-            Double revenue = orderService.getRevenueByDate(date);
-            Double profit = orderService.getProfitByDate(date);
-
-            result.add(new TimeBasedChartData(formattedDate, revenue, profit, null));
-        }
-
-        return result;
+        return salesAggregationService.getDailyRevenueAndProfit(startDate, endDate);
     }
 
     // Lấy dữ liệu số lượng bán theo tháng
     public List<TimeBasedChartData> getMonthlyQuantitySoldData(int month, int year) {
-        List<TimeBasedChartData> result = new ArrayList<>();
         YearMonth yearMonth = YearMonth.of(year, month);
-        int daysInMonth = yearMonth.lengthOfMonth();
-
-        for (int day = 1; day <= daysInMonth; day++) {
-            LocalDate date = LocalDate.of(year, month, day);
-            String formattedDate = date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-
-            Integer quantitySold = orderService.getQuantitySoldByDate(date);
+        LocalDate startDate = yearMonth.atDay(1);
+        LocalDate endDate = yearMonth.atEndOfMonth();
 
-            result.add(new TimeBasedChartData(formattedDate, null, null, quantitySold));
-        }
-
-        return result;
+        return salesAggregationService.getDailyQuantitySold(startDate, endDate);
     }
 
     // Lấy dữ liệu bán theo danh mục trong tháng
     public List<CategorySalesData> getMonthlyCategorySalesData(int month, int year) {
-        LocalDateTime startOfMonth = LocalDate.of(year, month, 1).atStartOfDay();
-        LocalDateTime endOfMonth = YearMonth.of(year, month).atEndOfMonth().plusDays(1).atStartOfDay().minusNanos(1);
-
-        List<Order> orders = orderService.getOrdersBetweenDates(startOfMonth, endOfMonth);
+        YearMonth yearMonth = YearMonth.of(year, month);
 
-        return calculateCategorySalesData(orders);
+        return getDateRangeCategorySalesData(yearMonth.atDay(1), yearMonth.atEndOfMonth());
     }
 
     public StatisticsData getMonthlyStatisticsData(Integer month, Integer year) {
@@ -259,11 +178,13 @@ public class StatisticsService {
             year = now.getYear();
         }
 
-        List<TimeBasedChartData> timeSeriesRevenueProfitData = getMonthlyRevenueAndProfitData(month, year);
-        List<TimeBasedChartData> timeSeriesQuantityData = getMonthlyQuantitySoldData(month, year);
-        List<CategorySalesData> categorySalesRatio = getMonthlyCategorySalesData(month, year);
+        YearMonth yearMonth = YearMonth.of(year, month);
+        LocalDate startDate = yearMonth.atDay(1);
+        LocalDate endDate = yearMonth.atEndOfMonth();
 
-        return new StatisticsData(timeSeriesRevenueProfitData, timeSeriesQuantityData, categorySalesRatio);
+        return statisticsCache.get("monthly:" + yearMonth, startDate, endDate, () -> buildStatisticsData(
+                () -> salesAggregationService.getDailyTotals(startDate, endDate),
+                () -> getDateRangeCategorySalesData(startDate, endDate)));
     }
 
     // ---------- End of Monthly ----------
@@ -272,70 +193,29 @@ public class StatisticsService {
 
     // Lấy dữ liệu doanh thu và lợi nhuận theo quý
     public List<TimeBasedChartData> getQuarterlyRevenueAndProfitData(int quarter, int year) {
-        List<TimeBasedChartData> result = new ArrayList<>();
-
         // Xác định tháng bắt đầu và kết thúc của quý
-        int startMonth = (quarter - 1) * 3 + 1;
-        int endMonth = startMonth + 2;
-
-        for (int month = startMonth; month <= endMonth; month++) {
-            YearMonth yearMonth = YearMonth.of(year, month);
-            String formattedMonth = yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-
-            // Tính tổng doanh thu và lợi nhuận trong tháng
-            Double monthlyRevenue = 0.0;
-            Double monthlyProfit = 0.0;
-
-            for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
-                LocalDate date = LocalDate.of(year, month, day);
-                monthlyRevenue += orderService.getRevenueByDate(date);
-                monthlyProfit += orderService.getProfitByDate(date);
-            }
+        YearMonth startMonth = YearMonth.of(year, (quarter - 1) * 3 + 1);
+        YearMonth endMonth = startMonth.plusMonths(2);
 
-            result.add(new TimeBasedChartData(formattedMonth, monthlyRevenue, monthlyProfit, null));
-        }
-
-        return result;
+        return salesAggregationService.getMonthlyRevenueAndProfit(startMonth, endMonth);
     }
 
     // Lấy dữ liệu số lượng bán theo quý
     public List<TimeBasedChartData> getQuarterlyQuantitySoldData(int quarter, int year) {
-        List<TimeBasedChartData> result = new ArrayList<>();
-
         // Xác định tháng bắt đầu và kết thúc của quý
-        int startMonth = (quarter - 1) * 3 + 1;
-        int endMonth = startMonth + 2;
-
-        for (int month = startMonth; month <= endMonth; month++) {
-            YearMonth yearMonth = YearMonth.of(year, month);
-            String formattedMonth = yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM"));
+        YearMonth startMonth = YearMonth.of(year, (quarter - 1) * 3 + 1);
+        YearMonth endMonth = startMonth.plusMonths(2);
 
-            // Tính tổng số lượng bán trong tháng
-            Integer monthlyQuantity = 0;
-
-            for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
-                LocalDate date = LocalDate.of(year, month, day);
-                monthlyQuantity += orderService.getQuantitySoldByDate(date);
-            }
-
-            result.add(new TimeBasedChartData(formattedMonth, null, null, monthlyQuantity));
-        }
-
-        return result;
+        return salesAggregationService.getMonthlyQuantitySold(startMonth, endMonth);
     }
 
     // Lấy dữ liệu bán theo danh mục trong quý
     public List<CategorySalesData> getQuarterlyCategorySalesData(int quarter, int year) {
         // Xác định tháng bắt đầu và kết thúc của quý
-        int startMonth = (quarter - 1) * 3 + 1;
-        int endMonth = startMonth + 2;
-
-        LocalDateTime startOfQuarter = LocalDate.of(year, startMonth, 1).atStartOfDay();
-        LocalDateTime endOfQuarter = YearMonth.of(year, endMonth).atEndOfMonth().plusDays(1).atStartOfDay().minusNanos(1);
+        YearMonth startMonth = YearMonth.of(year, (quarter - 1) * 3 + 1);
+        YearMonth endMonth = startMonth.plusMonths(2);
 
-        List<Order> orders = orderService.getOrdersBetweenDates(startOfQuarter, endOfQuarter);
-
-        return calculateCategorySalesData(orders);
+        return getDateRangeCategorySalesData(startMonth.atDay(1), endMonth.atEndOfMonth());
     }
 
     public StatisticsData getQuarterlyStatisticsData(Integer quarter, Integer year) {
@@ -345,11 +225,15 @@ public class StatisticsService {
             year = LocalDate.now().getYear();
         }
 
-        List<TimeBasedChartData> timeSeriesRevenueProfitData = getQuarterlyRevenueAndProfitData(quarter, year);
-        List<TimeBasedChartData> timeSeriesQuantityData = getQuarterlyQuantitySoldData(quarter, year);
-        List<CategorySalesData> categorySalesRatio = getQuarterlyCategorySalesData(quarter, year);
+        YearMonth startMonth = YearMonth.of(year, (quarter - 1) * 3 + 1);
+        YearMonth endMonth = startMonth.plusMonths(2);
+
+        LocalDate startDate = startMonth.atDay(1);
+        LocalDate endDate = endMonth.atEndOfMonth();
 
-        return new StatisticsData(timeSeriesRevenueProfitData, timeSeriesQuantityData, categorySalesRatio);
+        return statisticsCache.get("quarterly:" + year + "-Q" + quarter, startDate, endDate, () -> buildStatisticsData(
+                () -> salesAggregationService.getMonthlyTotals(startMonth, endMonth),
+                () -> getDateRangeCategorySalesData(startDate, endDate)));
     }
 
     // ---------- End of Quarterly ----------
@@ -358,58 +242,23 @@ public class StatisticsService {
 
     // Lấy dữ liệu doanh thu và lợi nhuận theo năm
     public List<TimeBasedChartData> getYearlyRevenueAndProfitData(int year) {
-        List<TimeBasedChartData> result = new ArrayList<>();
-
-        for (int month = 1; month <= 12; month++) {
-            YearMonth yearMonth = YearMonth.of(year, month);
-            String formattedMonth = yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-
-            // Tính tổng doanh thu và lợi nhuận trong tháng
-            Double monthlyRevenue = 0.0;
-            Double monthlyProfit = 0.0;
+        YearMonth startMonth = YearMonth.of(year, 1);
+        YearMonth endMonth = YearMonth.of(year, 12);
 
-            for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
-                LocalDate date = LocalDate.of(year, month, day);
-                monthlyRevenue += orderService.getRevenueByDate(date);
-                monthlyProfit += orderService.getProfitByDate(date);
-            }
-
-            result.add(new TimeBasedChartData(formattedMonth, monthlyRevenue, monthlyProfit, null));
-        }
-
-        return result;
+        return salesAggregationService.getMonthlyRevenueAndProfit(startMonth, endMonth);
     }
 
     // Lấy dữ liệu số lượng bán theo năm
     public List<TimeBasedChartData> getYearlyQuantitySoldData(int year) {
-        List<TimeBasedChartData> result = new ArrayList<>();
-
-        for (int month = 1; month <= 12; month++) {
-            YearMonth yearMonth = YearMonth.of(year, month);
-            String formattedMonth = yearMonth.format(DateTimeFormatter.ofPattern("yyyy-MM"));
-
-            // Tính tổng số lượng bán trong tháng
-            Integer monthlyQuantity = 0;
+        YearMonth startMonth = YearMonth.of(year, 1);
+        YearMonth endMonth = YearMonth.of(year, 12);
 
-            for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
-                LocalDate date = LocalDate.of(year, month, day);
-                monthlyQuantity += orderService.getQuantitySoldByDate(date);
-            }
-
-            result.add(new TimeBasedChartData(formattedMonth, null, null, monthlyQuantity));
-        }
-
-        return result;
+        return salesAggregationService.getMonthlyQuantitySold(startMonth, endMonth);
     }
 
     // Lấy dữ liệu bán theo danh mục trong năm
     public List<CategorySalesData> getYearlyCategorySalesData(int year) {
-        LocalDateTime startOfYear = LocalDate.of(year, 1, 1).atStartOfDay();
-        LocalDateTime endOfYear = LocalDate.of(year, 12, 31).plusDays(1).atStartOfDay().minusNanos(1);
-
-        List<Order> orders = orderService.getOrdersBetweenDates(startOfYear, endOfYear);
-
-        return calculateCategorySalesData(orders);
+        return getDateRangeCategorySalesData(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
     }
 
     public StatisticsData getYearlyStatisticsData(Integer year) {
@@ -417,54 +266,52 @@ public class StatisticsService {
             year = LocalDate.now().getYear();
         }
 
-        List<TimeBasedChartData> timeSeriesRevenueProfitData = getYearlyRevenueAndProfitData(year);
-        List<TimeBasedChartData> timeSeriesQuantityData = getYearlyQuantitySoldData(year);
-        List<CategorySalesData> categorySalesRatio = getYearlyCategorySalesData(year);
+        YearMonth startMonth = YearMonth.of(year, 1);
+        YearMonth endMonth = YearMonth.of(year, 12);
+
+        LocalDate startDate = startMonth.atDay(1);
+        LocalDate endDate = endMonth.atEndOfMonth();
 
-        return new StatisticsData(timeSeriesRevenueProfitData, timeSeriesQuantityData, categorySalesRatio);
+        return statisticsCache.get("yearly:" + year, startDate, endDate, () -> buildStatisticsData(
+                () -> salesAggregationService.getMonthlyTotals(startMonth, endMonth),
+                () -> getDateRangeCategorySalesData(startDate, endDate)));
     }
 
     // ---------- End of Yearly ----------
 
-    // Phương thức hỗ trợ để tính toán dữ liệu bán theo danh mục
-    private List<CategorySalesData> calculateCategorySalesData(List<Order> orders) {
-        Map<String, Integer> categorySales = new HashMap<>();
-        final String UNKNOWN_CATEGORY = "Unknown"; // Danh mục mặc định khi không xác định được
-
-        // Tính tổng số lượng bán cho mỗi danh mục
-        for (Order order : orders) {
-            for (OrderItem item : order.getItems()) {
-                // Lấy thông tin sản phẩm
-                String productId = item.getProductId();
-                int quantity = item.getQuantity();
-
-                // Xử lý khi danh mục trả về null
-                String category = productService.getProductTypeNameById(productId);
-
-                // Kiểm tra null và xử lý
-                if (category == null) {
-                    // Thử thay thế bằng cách lấy sản phẩm trực tiếp (nếu có thể)
-                    try {
-                        Product product = productService.getProductById(productId);
-                        if (product != null && product.getProductType() != null) {
-                            category = product.getProductType().getName(); // Giả sử Product có getType() trả về đối tượng có getName()
-                        } else {
-                            logger.warn("Không tìm thấy sản phẩm hoặc loại sản phẩm cho ID: {}", productId);
-                            category = UNKNOWN_CATEGORY;
-                        }
-                    } catch (Exception e) {
-                        logger.error("Lỗi khi lấy thông tin sản phẩm cho ID: {}", productId, e);
-                        category = UNKNOWN_CATEGORY;
-                    }
-                }
-
-                // Cập nhật dữ liệu bán hàng theo danh mục
-                categorySales.put(category, categorySales.getOrDefault(category, 0) + quantity);
-            }
+    /**
+     * Chạy song song hai phần độc lập của một StatisticsData:
+     * - chuỗi tổng theo ngày/tháng, đọc một lần và dùng chung cho biểu đồ doanh thu/lợi nhuận và số lượng
+     * - tỷ lệ bán theo danh mục
+     */
+    private StatisticsData buildStatisticsData(Callable<List<TimeBasedChartData>> totalsSection,
+                                               Callable<List<CategorySalesData>> categorySection) {
+        try (StatisticsTaskRunner.Scope scope = statisticsTaskRunner.open()) {
+            Supplier<List<TimeBasedChartData>> totals = scope.fork(totalsSection);
+            Supplier<List<CategorySalesData>> categorySalesRatio = scope.fork(categorySection);
+            scope.join();
+
+            return new StatisticsData(
+                    SalesAggregationService.toRevenueAndProfitSeries(totals.get()),
+                    SalesAggregationService.toQuantitySoldSeries(totals.get()),
+                    categorySalesRatio.get());
         }
+    }
 
-        return categorySales.entrySet().stream()
-                .map(entry -> new CategorySalesData(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+    // Dựng lại rollup daily_sales từ collection orders
+    public int rebuildDailySales() {
+        int days = dailySalesService.rebuildAll();
+        statisticsCache.clear();
+        return days;
+    }
+
+    // Số lần hit/miss của cache thống kê
+    public Map<String, Object> getCacheStats() {
+        return statisticsCache.getStats();
+    }
+
+    // Đối soát sổ cái doanh số với collection orders
+    public SalesLedger reconcileSalesLedger() {
+        return salesLedgerService.reconcile();
     }
 }
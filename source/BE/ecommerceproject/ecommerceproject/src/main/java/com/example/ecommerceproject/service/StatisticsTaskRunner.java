@@ -0,0 +1,134 @@
+package com.example.ecommerceproject.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Chạy song song các phần độc lập của một yêu cầu thống kê trên virtual thread.
+ * Hoạt động giống StructuredTaskScope.ShutdownOnFailure (API này vẫn là preview ở Java 21):
+ * - Mỗi phần được fork trong một Scope, join() chờ tất cả tới hạn chót của yêu cầu
+ * - Một phần lỗi hoặc quá hạn thì các phần còn lại bị hủy và lỗi được ném ra cho nơi gọi
+ * - Khi tắt chế độ song song, các phần chạy tuần tự trên thread gọi; hạn chót được kiểm tra trước mỗi phần
+ *   và khi join() (phần đang chạy không bị ngắt giữa chừng)
+ */
+@Component
+public class StatisticsTaskRunner {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${statistics.concurrent.enabled:true}")
+    private boolean concurrentEnabled;
+
+    @Value("${statistics.request-timeout-ms:5000}")
+    private long requestTimeoutMs;
+
+    public Scope open() {
+        return new Scope(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public final class Scope implements AutoCloseable {
+        private final long deadlineNanos;
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        private Scope(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Bắt đầu một phần; kết quả chỉ được đọc sau khi join() thành công.
+         * Khi tắt chế độ song song, phần đó chạy ngay trên thread hiện tại nếu chưa quá hạn chót.
+         */
+        public <T> Supplier<T> fork(Callable<T> task) {
+            if (!concurrentEnabled) {
+                checkDeadline();
+                T result = call(task);
+                return () -> result;
+            }
+
+            Future<T> future = executor.submit(task);
+            futures.add(future);
+            return future::resultNow;
+        }
+
+        public void join() {
+            if (!concurrentEnabled) {
+                checkDeadline();
+                return;
+            }
+            try {
+                for (Future<?> future : futures) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                }
+            } catch (TimeoutException e) {
+                cancelAll();
+                throw timeout();
+            } catch (ExecutionException e) {
+                cancelAll();
+                throw propagate(e.getCause());
+            } catch (CancellationException e) {
+                cancelAll();
+                throw new IllegalStateException("Statistics section was cancelled", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll();
+                throw new IllegalStateException("Interrupted while waiting for statistics", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            cancelAll();
+        }
+
+        private void checkDeadline() {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw timeout();
+            }
+        }
+
+        private IllegalStateException timeout() {
+            return new IllegalStateException("Statistics request exceeded " + requestTimeoutMs + " ms");
+        }
+
+        private void cancelAll() {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        private <T> T call(Callable<T> task) {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw propagate(e);
+            }
+        }
+
+        private RuntimeException propagate(Throwable cause) {
+            if (cause instanceof RuntimeException runtimeException) {
+                return runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            return new IllegalStateException(cause);
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package com.example.ecommerceproject.service;
 
 import com.example.ecommerceproject.model.Address;
+import com.example.ecommerceproject.model.LoyaltyLedgerEntry;
 import com.example.ecommerceproject.model.User;
 import com.example.ecommerceproject.repository.UserRepository;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -24,6 +36,8 @@ import java.security.SecureRandom;
 @Service
 public class UserService implements UserDetailsService {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final Key secretKey = Keys.secretKeyFor(SignatureAlgorithm.HS512);
@@ -31,6 +45,17 @@ public class UserService implements UserDetailsService {
 
     @Autowired
     private EmailService emailService;
+
+    @Autowired
+    private UserSummaryService userSummaryService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Hạng thành viên theo tổng chi tiêu, xét từ cao xuống thấp
+    private static final int[] RANK_THRESHOLDS = {10000000, 5000000, 2000000}; // 10 triệu, 5 triệu, 2 triệu VND
+    private static final String[] RANK_NAMES = {"Thành viên bạch kim", "Thành viên vàng", "Thành viên bạc"};
+    private static final String DEFAULT_RANK = "Thành viên đồng";
     
     @Autowired
     public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, AddressService addressService) {
@@ -149,7 +174,10 @@ public class UserService implements UserDetailsService {
         }
         
         // Lưu người dùng đã cập nhật
-        return userRepository.save(existingUser);
+        User savedUser = userRepository.save(existingUser);
+        // Email/username có thể đã đổi, bỏ bản tóm tắt đang cache cho danh sách đơn hàng
+        userSummaryService.evict(userId);
+        return savedUser;
     }
 
     public User getUserById(String userId) {
@@ -350,22 +378,45 @@ public class UserService implements UserDetailsService {
      * @return User đã cập nhật
      */
     public User addLoyaltyPoints(String userId, double totalAmount) {
-        User user = getUserById(userId);
-        
+        return addLoyaltyPoints(userId, totalAmount, null, null);
+    }
+
+    /**
+     * Thêm điểm loyalty, cộng totalSpend và tính lại rank trong một lệnh cập nhật duy nhất
+     * @param orderId Đơn hàng tạo ra điểm (có thể null)
+     * @param reference Mã tham chiếu của thao tác; gọi lại với cùng mã sẽ không cộng điểm lần nữa
+     * @return User đã cập nhật
+     */
+    public User addLoyaltyPoints(String userId, double totalAmount, String orderId, String reference) {
         // Tính số điểm loyalty (10% giá trị đơn hàng / 1000)
         // Mỗi 1000 VND = 1 điểm
         int pointsToAdd = (int)(totalAmount * 0.1 / 1000);
-        
-        // Cập nhật tổng chi tiêu của người dùng
-        user.setTotalSpend(user.getTotalSpend() + (int)totalAmount);
-        
-        // Cập nhật điểm loyalty
-        user.setLoyaltyPoints(user.getLoyaltyPoints() + pointsToAdd);
-        
-        // Cập nhật rank dựa trên tổng chi tiêu
-        updateUserRank(user);
-        
-        return userRepository.save(user);
+        int spendAmount = (int) totalAmount;
+
+        LoyaltyLedgerEntry entry = new LoyaltyLedgerEntry(reference, userId, orderId,
+                LoyaltyLedgerEntry.Type.EARN, pointsToAdd, spendAmount);
+        if (!appendLedgerEntry(entry)) {
+            // Thao tác đã được ghi trước đó (ví dụ outbox thử lại)
+            return getUserById(userId);
+        }
+
+        User updated;
+        try {
+            updated = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(userId)),
+                    accrualUpdate(pointsToAdd, spendAmount),
+                    FindAndModifyOptions.options().returnNew(true),
+                    User.class);
+        } catch (RuntimeException e) {
+            // Bỏ dòng sổ điểm để lần thử lại (outbox) không coi thao tác là đã áp dụng
+            removeLedgerEntry(entry);
+            throw e;
+        }
+        if (updated == null) {
+            mongoTemplate.remove(entry);
+            throw new RuntimeException("User not found with id: " + userId);
+        }
+        return updated;
     }
     
     /**
@@ -376,16 +427,42 @@ public class UserService implements UserDetailsService {
      * @throws RuntimeException nếu không đủ điểm
      */
     public double useLoyaltyPoints(String userId, int pointsToUse) {
-        User user = getUserById(userId);
-        
-        if (user.getLoyaltyPoints() < pointsToUse) {
+        return useLoyaltyPoints(userId, pointsToUse, null);
+    }
+
+    /**
+     * Trừ điểm loyalty bằng một lệnh $inc có điều kiện loyaltyPoints >= pointsToUse nên số dư không bao giờ âm
+     * @param orderId Đơn hàng dùng điểm; mỗi đơn chỉ được trừ điểm một lần
+     */
+    public double useLoyaltyPoints(String userId, int pointsToUse, String orderId) {
+        if (pointsToUse <= 0) {
+            throw new IllegalArgumentException("Số điểm sử dụng phải lớn hơn 0");
+        }
+
+        String reference = orderId != null ? orderId + ":" + LoyaltyLedgerEntry.Type.REDEEM : null;
+        LoyaltyLedgerEntry entry = new LoyaltyLedgerEntry(reference, userId, orderId,
+                LoyaltyLedgerEntry.Type.REDEEM, -pointsToUse, 0);
+        if (!appendLedgerEntry(entry)) {
+            throw new RuntimeException("Đơn hàng đã sử dụng điểm loyalty");
+        }
+
+        Query query = new Query(Criteria.where("_id").is(userId).and("loyaltyPoints").gte(pointsToUse));
+        boolean applied;
+        try {
+            applied = mongoTemplate.updateFirst(query, new Update().inc("loyaltyPoints", -pointsToUse), User.class)
+                    .getMatchedCount() > 0;
+        } catch (RuntimeException e) {
+            removeLedgerEntry(entry);
+            throw e;
+        }
+        if (!applied) {
+            mongoTemplate.remove(entry);
+            if (!userRepository.existsById(userId)) {
+                throw new RuntimeException("User not found with id: " + userId);
+            }
             throw new RuntimeException("Không đủ điểm loyalty");
         }
-        
-        // Trừ điểm đã sử dụng
-        user.setLoyaltyPoints(user.getLoyaltyPoints() - pointsToUse);
-        userRepository.save(user);
-        
+
         // Quy đổi điểm thành tiền (1 điểm = 1000 VND)
         return pointsToUse * 1000;
     }
@@ -401,21 +478,39 @@ public class UserService implements UserDetailsService {
     }
     
     /**
-     * Cập nhật hạng thành viên của người dùng dựa trên tổng chi tiêu
-     * @param user User cần cập nhật
+     * Cộng điểm và totalSpend rồi tính lại hạng thành viên theo totalSpend mới, tất cả trong một pipeline update
      */
-    private void updateUserRank(User user) {
-        int totalSpend = user.getTotalSpend();
-        
-        if (totalSpend >= 10000000) { // 10 triệu VND
-            user.setRank("Thành viên bạch kim");
-        } else if (totalSpend >= 5000000) { // 5 triệu VND
-            user.setRank("Thành viên vàng");
-        } else if (totalSpend >= 2000000) { // 2 triệu VND
-            user.setRank("Thành viên bạc");
-        } else {
-            user.setRank("Thành viên đồng");
+    private AggregationUpdate accrualUpdate(int points, int spendAmount) {
+        Document increment = new Document("$set", new Document()
+                .append("loyaltyPoints", new Document("$add", List.of(new Document("$ifNull", List.of("$loyaltyPoints", 0)), points)))
+                .append("totalSpend", new Document("$add", List.of(new Document("$ifNull", List.of("$totalSpend", 0)), spendAmount))));
+
+        List<Document> branches = new ArrayList<>();
+        for (int i = 0; i < RANK_THRESHOLDS.length; i++) {
+            branches.add(new Document("case", new Document("$gte", List.of("$totalSpend", RANK_THRESHOLDS[i])))
+                    .append("then", RANK_NAMES[i]));
+        }
+        Document rank = new Document("$set", new Document("rank",
+                new Document("$switch", new Document("branches", branches).append("default", DEFAULT_RANK))));
+
+        return AggregationUpdate.from(List.of(Aggregation.stage(increment), Aggregation.stage(rank)));
+    }
+
+    private void removeLedgerEntry(LoyaltyLedgerEntry entry) {
+        try {
+            mongoTemplate.remove(entry);
+        } catch (RuntimeException e) {
+            logger.error("Không thể xóa dòng sổ điểm {} sau khi cập nhật điểm thất bại", entry.getId(), e);
         }
     }
-}
 
+    // Ghi một dòng sổ điểm, trả về false nếu thao tác với cùng mã tham chiếu đã được ghi
+    private boolean appendLedgerEntry(LoyaltyLedgerEntry entry) {
+        try {
+            mongoTemplate.insert(entry);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
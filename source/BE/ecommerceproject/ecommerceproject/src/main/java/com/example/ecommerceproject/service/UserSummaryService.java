@@ -0,0 +1,132 @@
+package com.example.ecommerceproject.service;
+
+import com.example.ecommerceproject.model.Order;
+import com.example.ecommerceproject.model.OrderSummary;
+import com.example.ecommerceproject.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bổ sung thông tin người dùng (email, username) cho danh sách đơn hàng.
+ * - Gom các userId khác nhau của cả danh sách và lấy bằng một truy vấn $in, chỉ đọc email/username
+ * - Kết quả được giữ trong cache LRU có giới hạn số entry và thời gian sống, xóa khi người dùng cập nhật thông tin
+ */
+@Service
+public class UserSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSummaryService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, CachedUser> cache;
+
+    @Autowired
+    public UserSummaryService(MongoTemplate mongoTemplate,
+                              @Value("${orders.user-summary-cache.max-entries:5000}") int maxEntries,
+                              @Value("${orders.user-summary-cache.ttl-ms:600000}") long ttlMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                return size() > UserSummaryService.this.maxEntries;
+            }
+        };
+    }
+
+    public void enrichOrders(List<Order> orders) {
+        Map<String, UserSummary> users = getSummaries(orders.stream().map(Order::getUserId).toList());
+        for (Order order : orders) {
+            order.setAdditionalInfo(toAdditionalInfo(users.get(order.getUserId())));
+        }
+    }
+
+    public void enrichSummaries(List<OrderSummary> summaries) {
+        Map<String, UserSummary> users = getSummaries(summaries.stream().map(OrderSummary::getUserId).toList());
+        for (OrderSummary summary : summaries) {
+            summary.setAdditionalInfo(toAdditionalInfo(users.get(summary.getUserId())));
+        }
+    }
+
+    /**
+     * Lấy email/username cho các userId; id không tồn tại sẽ không có trong kết quả
+     */
+    public Map<String, UserSummary> getSummaries(Collection<String> userIds) {
+        Map<String, UserSummary> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            for (String userId : userIds) {
+                if (userId == null || result.containsKey(userId)) {
+                    continue;
+                }
+                CachedUser cached = cache.get(userId);
+                if (cached != null && cached.expiresAt() > now) {
+                    result.put(userId, cached.summary());
+                } else {
+                    missing.add(userId);
+                }
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        try {
+            Query query = new Query(Criteria.where("_id").in(missing));
+            query.fields().include("email", "username");
+            List<User> users = mongoTemplate.find(query, User.class);
+
+            synchronized (cache) {
+                for (User user : users) {
+                    UserSummary summary = new UserSummary(user.getId(), user.getEmail(), user.getUsername());
+                    cache.put(user.getId(), new CachedUser(summary, now + ttlMillis));
+                    result.put(user.getId(), summary);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error fetching user info for {} users", missing.size(), e);
+        }
+        return result;
+    }
+
+    // Gọi khi email/username của người dùng thay đổi
+    public void evict(String userId) {
+        synchronized (cache) {
+            cache.remove(userId);
+        }
+    }
+
+    private Map<String, Object> toAdditionalInfo(UserSummary user) {
+        Map<String, Object> additionalInfo = new HashMap<>();
+        if (user != null) {
+            additionalInfo.put("userEmail", user.email());
+            additionalInfo.put("username", user.username());
+        }
+        return additionalInfo;
+    }
+
+    public record UserSummary(String id, String email, String username) {
+    }
+
+    private record CachedUser(UserSummary summary, long expiresAt) {
+    }
+}
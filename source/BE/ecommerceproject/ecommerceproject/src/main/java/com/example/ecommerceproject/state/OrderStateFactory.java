@@ -3,32 +3,40 @@ package com.example.ecommerceproject.state;
 import com.example.ecommerceproject.model.OrderStatus;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * OrderStateFactory - Factory class for creating state objects
  * This is not strictly part of the State Pattern but helps with state management
+ * State objects hold no per-order data, so one shared instance per status is reused (Flyweight)
  */
 @Component
 public class OrderStateFactory {
 
+    private static final Map<OrderStatus, OrderState> STATES;
+
+    static {
+        Map<OrderStatus, OrderState> states = new EnumMap<>(OrderStatus.class);
+        states.put(OrderStatus.PENDING, new PendingState());
+        states.put(OrderStatus.PAID, new PaidState());
+        states.put(OrderStatus.SHIPPING, new ShippingState());
+        states.put(OrderStatus.DELIVERED, new DeliveredState());
+        states.put(OrderStatus.CANCELLED, new CancelledState());
+        STATES = Collections.unmodifiableMap(states);
+    }
+
     /**
      * Get the appropriate state object based on the order status
      * @param status current order status
-     * @return the corresponding OrderState object
+     * @return the shared OrderState object for that status
      */
     public OrderState getState(OrderStatus status) {
-        switch (status) {
-            case PENDING:
-                return new PendingState();
-            case PAID:
-                return new PaidState();
-            case SHIPPING:
-                return new ShippingState();
-            case DELIVERED:
-                return new DeliveredState();
-            case CANCELLED:
-                return new CancelledState();
-            default:
-                throw new IllegalArgumentException("Unknown order status: " + status);
+        OrderState state = status != null ? STATES.get(status) : null;
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown order status: " + status);
         }
+        return state;
     }
-}
\ No newline at end of file
+}
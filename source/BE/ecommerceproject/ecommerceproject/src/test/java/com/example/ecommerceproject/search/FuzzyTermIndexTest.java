@@ -0,0 +1,117 @@
+package com.example.ecommerceproject.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FuzzyTermIndexTest {
+
+    @Test
+    void boundedLevenshteinMatchesExactDistanceWithinBound() {
+        assertEquals(0, FuzzyTermIndex.boundedLevenshtein("ryzen", "ryzen", 2));
+        assertEquals(1, FuzzyTermIndex.boundedLevenshtein("ryzn", "ryzen", 2));
+        assertEquals(1, FuzzyTermIndex.boundedLevenshtein("ryzen", "rizen", 1));
+        assertEquals(2, FuzzyTermIndex.boundedLevenshtein("geforce", "gefroce", 2));
+        assertEquals(1, FuzzyTermIndex.boundedLevenshtein("", "a", 1));
+        assertEquals(3, FuzzyTermIndex.boundedLevenshtein("kitten", "sitting", 3));
+    }
+
+    @Test
+    void boundedLevenshteinStopsAtMaxDistancePlusOne() {
+        assertEquals(3, FuzzyTermIndex.boundedLevenshtein("kitten", "sitting", 2));
+        assertEquals(2, FuzzyTermIndex.boundedLevenshtein("abc", "xyz", 1));
+        // Chênh lệch độ dài vượt giới hạn thì trả về ngay
+        assertEquals(2, FuzzyTermIndex.boundedLevenshtein("ram", "ramddr5", 1));
+    }
+
+    @Test
+    void matchFindsMisspelledTerms() {
+        try (FuzzyTermIndex index = new FuzzyTermIndex(4)) {
+            for (String term : new String[]{"ryzen", "radeon", "geforce", "gigabyte", "samsung"}) {
+                index.add(term);
+            }
+
+            assertEquals(Map.of("ryzen", 1), index.match("ryzn", 1));
+            assertEquals(Map.of("geforce", 2), index.match("gefroce", 2));
+            assertEquals(Map.of("samsung", 0), index.match("samsung", 1));
+            assertTrue(index.match("nvidia", 2).isEmpty());
+
+            index.remove("ryzen");
+            assertFalse(index.match("ryzn", 1).containsKey("ryzen"));
+        }
+    }
+
+    @Test
+    void matchHandlesTermsWithRepeatedTrigrams() {
+        try (FuzzyTermIndex index = new FuzzyTermIndex(1)) {
+            index.add("aaaaab");
+            index.add("aaaaaaa");
+
+            assertEquals(Map.of("aaaaab", 1, "aaaaaaa", 1), index.match("aaaaaa", 1));
+        }
+    }
+
+    @Test
+    void trigramFilterNeverDropsATrueMatch() {
+        // So với duyệt toàn bộ trên bảng chữ cái nhỏ, nơi trigram trùng lặp rất thường gặp
+        Random random = new Random(11);
+        Set<String> dictionary = new HashSet<>();
+        while (dictionary.size() < 400) {
+            dictionary.add(randomWord(random));
+        }
+
+        try (FuzzyTermIndex sharded = new FuzzyTermIndex(4); FuzzyTermIndex single = new FuzzyTermIndex(1)) {
+            dictionary.forEach(sharded::add);
+            dictionary.forEach(single::add);
+
+            for (int i = 0; i < 200; i++) {
+                String token = randomWord(random);
+                for (int maxDistance = 1; maxDistance <= 2; maxDistance++) {
+                    Map<String, Integer> expected = new HashMap<>();
+                    for (String term : dictionary) {
+                        int distance = levenshtein(token, term);
+                        if (distance <= maxDistance) {
+                            expected.put(term, distance);
+                        }
+                    }
+                    assertEquals(expected, sharded.match(token, maxDistance), token + " / " + maxDistance);
+                    assertEquals(expected, single.match(token, maxDistance), token + " / " + maxDistance);
+                }
+            }
+        }
+    }
+
+    private static String randomWord(Random random) {
+        int length = 3 + random.nextInt(6);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(3)));
+        }
+        return word.toString();
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
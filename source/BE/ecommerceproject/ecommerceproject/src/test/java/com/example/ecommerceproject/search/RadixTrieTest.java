@@ -0,0 +1,105 @@
+package com.example.ecommerceproject.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RadixTrieTest {
+
+    @Test
+    void topKReturnsPrefixMatchesByWeight() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("ryzen 5 7600", "p1", 10);
+        trie.put("ryzen 7 7800x3d", "p2", 50);
+        trie.put("ryzen", "brand", 30);
+        trie.put("rtx 4090", "p3", 40);
+
+        assertEquals(List.of("p2", "p3", "brand"), trie.topK("r", 3));
+        assertEquals(List.of("p2", "brand", "p1"), trie.topK("ryzen", 10));
+        assertEquals(List.of("p1"), trie.topK("ryzen 5", 10));
+        assertTrue(trie.topK("ryzen 9", 10).isEmpty());
+        assertTrue(trie.topK("x", 10).isEmpty());
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    void prefixEndingInsideAnEdgeMatchesTheWholeSubtree() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("geforce", "a", 1);
+        trie.put("gigabyte", "b", 2);
+
+        assertEquals(List.of("a"), trie.topK("gef", 10));
+        assertEquals(List.of("b", "a"), trie.topK("g", 10));
+        assertTrue(trie.topK("gefx", 10).isEmpty());
+    }
+
+    @Test
+    void removeMergesEdgesAndKeepsLookupsWorking() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("ab", "ab", 1);
+        trie.put("abc", "abc", 2);
+        trie.put("abd", "abd", 3);
+
+        // "abd" là lá: bị xóa; "ab" còn giá trị nên giữ nguyên
+        trie.remove("abd", "abd");
+        assertEquals(List.of("abc", "ab"), trie.topK("ab", 10));
+
+        // "ab" không còn giá trị và chỉ còn một con: gộp thành cạnh "abc"
+        trie.remove("ab", "ab");
+        assertEquals(List.of("abc"), trie.topK("a", 10));
+        assertEquals(List.of("abc"), trie.topK("ab", 10));
+        assertEquals(List.of("abc"), trie.topK("abc", 10));
+        assertTrue(trie.topK("abd", 10).isEmpty());
+        assertEquals(1, trie.size());
+
+        // Thêm lại sau khi gộp phải tách đúng cạnh đã gộp
+        trie.put("abx", "abx", 5);
+        trie.put("a", "a", 4);
+        assertEquals(List.of("abx", "a", "abc"), trie.topK("a", 10));
+        assertEquals(List.of("abx", "abc"), trie.topK("ab", 10));
+    }
+
+    @Test
+    void removeUpdatesMaxWeightSoOrderingStaysCorrect() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("intel core i9", "i9", 100);
+        trie.put("intel core i5", "i5", 20);
+        trie.put("amd ryzen", "ryzen", 50);
+
+        assertEquals(List.of("i9"), trie.topK("", 1));
+        trie.remove("intel core i9", "i9");
+        assertEquals(List.of("ryzen", "i5"), trie.topK("", 2));
+        assertEquals(List.of("ryzen"), trie.topK("", 1));
+    }
+
+    @Test
+    void sameValueUnderSeveralKeysIsReturnedOnce() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("rtx 4090", "p1", 10);
+        trie.put("geforce rtx 4090", "p1", 10);
+        trie.put("rtx 4080", "p2", 5);
+
+        assertEquals(List.of("p1", "p2"), trie.topK("", 10));
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    void removingUnknownKeyOrValueIsANoOp() {
+        RadixTrie trie = new RadixTrie();
+        trie.put("ssd", "s1", 1);
+
+        trie.remove("ss", "s1");
+        trie.remove("ssd", "other");
+        trie.remove("hdd", "s1");
+
+        assertEquals(1, trie.size());
+        assertEquals(List.of("s1"), trie.topK("s", 10));
+
+        trie.remove("ssd", "s1");
+        assertEquals(0, trie.size());
+        assertTrue(trie.topK("", 10).isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.ecommerceproject.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void neverReportsAnInsertedValueAsMissing() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        List<String> codes = randomCodes(10_000, 42);
+        codes.forEach(filter::put);
+
+        for (String code : codes) {
+            assertTrue(filter.mightContain(code), code);
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        randomCodes(10_000, 1).forEach(code -> filter.put("A" + code));
+
+        int falsePositives = 0;
+        for (String code : randomCodes(20_000, 2)) {
+            if (filter.mightContain("B" + code)) {
+                falsePositives++;
+            }
+        }
+        // Mục tiêu 1%, cho phép dư để test không chập chờn
+        assertTrue(falsePositives < 20_000 * 0.03, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void concurrentPutsAreNotLost() throws InterruptedException {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+        List<String> codes = randomCodes(40_000, 7);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            List<String> part = codes.subList(t * 10_000, (t + 1) * 10_000);
+            executor.execute(() -> part.forEach(filter::put));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (String code : codes) {
+            assertTrue(filter.mightContain(code), code);
+        }
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        for (String code : randomCodes(1_000, 3)) {
+            assertFalse(filter.mightContain(code));
+        }
+    }
+
+    private static List<String> randomCodes(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> codes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            codes.add("SALE" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36).toUpperCase());
+        }
+        return codes;
+    }
+}
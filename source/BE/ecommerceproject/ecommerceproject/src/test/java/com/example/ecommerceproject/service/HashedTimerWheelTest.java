@@ -0,0 +1,96 @@
+package com.example.ecommerceproject.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedTimerWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    void expiresOnlyWhenDeadlineTickIsReached() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, 0);
+        wheel.schedule("a", 50);
+
+        assertTrue(wheel.advance(40).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(50));
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(60).isEmpty());
+    }
+
+    @Test
+    void deadlineInThePastExpiresOnNextTick() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, 1000);
+        wheel.schedule("late", 0);
+
+        assertTrue(wheel.advance(1000).isEmpty());
+        assertEquals(List.of("late"), wheel.advance(1010));
+    }
+
+    @Test
+    void deadlineBeyondOneRotationSurvivesWrapAround() {
+        // 8 ô: tick 3 và tick 11 (= 3 + 8) nằm cùng một ô
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, 0);
+        wheel.schedule("near", 30);
+        wheel.schedule("far", 110);
+
+        assertEquals(List.of("near"), wheel.advance(30));
+        for (long now = 40; now < 110; now += TICK) {
+            assertTrue(wheel.advance(now).isEmpty(), "unexpected expiry at " + now);
+        }
+        assertEquals(List.of("far"), wheel.advance(110));
+    }
+
+    @Test
+    void missedTicksExpireEverythingDueExactlyOnce() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, 0);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule("k" + i, i * TICK);
+        }
+        wheel.schedule("later", 500);
+
+        // Nhảy qua hơn hai vòng bánh xe trong một lần advance
+        List<String> expired = wheel.advance(200);
+
+        assertEquals(20, expired.size());
+        assertEquals(20, new HashSet<>(expired).size());
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance(490).isEmpty());
+        assertEquals(List.of("later"), wheel.advance(500));
+    }
+
+    @Test
+    void cancelAndRescheduleReplaceExistingTimer() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 8, 0);
+        wheel.schedule("a", 20);
+        wheel.schedule("b", 20);
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+        wheel.schedule("b", 70);
+        assertEquals(1, wheel.size());
+
+        assertTrue(wheel.advance(60).isEmpty());
+        assertEquals(List.of("b"), wheel.advance(70));
+    }
+
+    @Test
+    void wheelSizeIsRoundedUpToPowerOfTwo() {
+        // 5 ô được làm tròn lên 8: tick 2 và tick 7 không được trùng ô
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK, 5, 0);
+        wheel.schedule("a", 20);
+        wheel.schedule("b", 70);
+
+        assertEquals(List.of("a"), wheel.advance(20));
+        assertTrue(wheel.advance(60).isEmpty());
+        Set<String> expired = new HashSet<>(wheel.advance(70));
+        assertEquals(Set.of("b"), expired);
+    }
+}